@@ -0,0 +1,46 @@
+package net.certiv.antlr.project;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the generator and regenerator benchmarks, reporting throughput together with the allocation
+ * rates measured by the GC profiler.
+ *
+ * <pre>
+ * java -jar jars/GenBench.jar [benchmark regex]
+ * </pre>
+ *
+ * The benchmarks expect to run from the project directory, which provides the rule set and the
+ * template groups. Otherwise, name the project directory with <code>-Dbench.base=...</code> and,
+ * optionally, the rule set with <code>-Dbench.rules=...</code>.
+ */
+public class Benchmarks {
+
+	private static final String defaultRuleSet = "GenProjectRuleSet.json";
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : ".*Bench";
+		Options opts = new OptionsBuilder().include(include).addProfiler(GCProfiler.class).build();
+		new Runner(opts).run();
+	}
+
+	/** Returns the project directory, with a trailing separator */
+	public static String basePath() throws IOException {
+		String base = System.getProperty("bench.base", ".");
+		return new File(base).getCanonicalPath() + File.separator;
+	}
+
+	/** Returns the pathname of the rule set */
+	public static String ruleSetPathname() throws IOException {
+		String rules = System.getProperty("bench.rules");
+		if (rules != null) return new File(rules).getCanonicalPath();
+		return new File(basePath(), defaultRuleSet).getCanonicalPath();
+	}
+}
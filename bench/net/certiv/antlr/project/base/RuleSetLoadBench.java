@@ -0,0 +1,59 @@
+package net.certiv.antlr.project.base;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.certiv.antlr.project.Benchmarks;
+import net.certiv.antlr.project.regen.spec.RuleSet;
+import net.certiv.antlr.project.util.Log;
+import net.certiv.antlr.project.util.Log.LogLevel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading, parsing, and validating the rule set json file, directly and through its binary snapshot.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleSetLoadBench {
+
+	private String pathname;
+
+	@Setup
+	public void setup() throws IOException {
+		Log.defLevel(LogLevel.Warn);
+		pathname = Benchmarks.ruleSetPathname();
+		if (!new ConfigBase().loadRuleSet(pathname)) throw new IOException("Rule set load failed: " + pathname);
+		ConfigBase config = new ConfigBase();
+		config.setSnapshot(true);
+		if (!config.loadRuleSet(pathname)) throw new IOException("Rule set snapshot failed: " + pathname);
+	}
+
+	@Benchmark
+	public RuleSet loadRuleSet() {
+		ConfigBase config = new ConfigBase();
+		config.loadRuleSet(pathname);
+		return config.getRuleSet();
+	}
+
+	@Benchmark
+	public RuleSet loadSnapshot() {
+		ConfigBase config = new ConfigBase();
+		config.setSnapshot(true);
+		config.loadRuleSet(pathname);
+		return config.getRuleSet();
+	}
+}
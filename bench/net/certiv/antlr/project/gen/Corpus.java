@@ -0,0 +1,404 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.certiv.antlr.project.util.Strings;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Synthetic grammar corpus for scale testing. Creates a combined grammar with a given number of
+ * parser rules, together with the generated parser source that the Antlr tool would produce for
+ * it, in as much as the parser is read by the context scanner: one context class per rule, or per
+ * labeled alternative, with labeled element fields and single or list valued token and rule
+ * accessors.
+ * <p>
+ * The content is fully determined by the settings and the seed. Rules reference only rules
+ * defined after them, so the grammar has no left recursion.
+ */
+public class Corpus {
+
+	private static final String[] ruleBases = { "expr", "stmt", "decl", "item", "value", "block", "param", "field" };
+	private static final String[] tokens = { "ID", "STRING", "NUMBER", "COMMA" };
+
+	private final String grammarName;
+	private final int ruleCnt;
+
+	private int alternatives = 3;	// maximum alternatives per rule
+	private int elements = 4;		// maximum elements per alternative
+	private double labeled = 0.2;	// fraction of elements given a label
+	private double lists = 0.25;	// fraction of elements that are list valued
+	private double altLabels = 0.2;	// fraction of multi-alternative rules with labeled alternatives
+	private long seed = 451;
+
+	private List<Rule> rules;
+
+	public Corpus(String grammarName, int rules) {
+		super();
+		this.grammarName = grammarName;
+		this.ruleCnt = rules;
+	}
+
+	public Corpus alternatives(int max) {
+		this.alternatives = max;
+		return this;
+	}
+
+	public Corpus elements(int max) {
+		this.elements = max;
+		return this;
+	}
+
+	public Corpus labeled(double fraction) {
+		this.labeled = fraction;
+		return this;
+	}
+
+	public Corpus lists(double fraction) {
+		this.lists = fraction;
+		return this;
+	}
+
+	public Corpus altLabels(double fraction) {
+		this.altLabels = fraction;
+		return this;
+	}
+
+	public Corpus seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/** Returns the number of context classes in the generated parser */
+	public int contexts() {
+		int cnt = 0;
+		for (Rule rule : model()) {
+			cnt += rule.altLabeled ? 1 + rule.alts.size() : 1;
+		}
+		return cnt;
+	}
+
+	/** Writes the combined grammar, <code>&lt;grammar&gt;.g4</code>, to the given directory */
+	public File writeGrammar(File dir) throws IOException {
+		File file = new File(dir, grammarName + ".g4");
+		FileUtils.writeStringToFile(file, grammar());
+		return file;
+	}
+
+	/** Writes the generated parser source to the given pathname */
+	public File writeParser(File file, String packageName) throws IOException {
+		FileUtils.writeStringToFile(file, parser(packageName));
+		return file;
+	}
+
+	// ///////////////////////////////////////////////////////////////////////////
+
+	public String grammar() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("grammar ").append(grammarName).append(";").append(Strings.eol);
+		for (Rule rule : model()) {
+			sb.append(Strings.eol).append(rule.name).append(Strings.eol);
+			for (int idx = 0; idx < rule.alts.size(); idx++) {
+				Alt alt = rule.alts.get(idx);
+				sb.append(idx == 0 ? "\t: " : "\t| ");
+				for (Elem elem : alt.elems) {
+					if (elem.label != null) sb.append(elem.label).append(elem.listLabel ? "+=" : "=");
+					sb.append(elem.ref);
+					if (elem.suffix != 0) sb.append(elem.suffix);
+					sb.append(" ");
+				}
+				if (alt.label != null) sb.append("# ").append(alt.label);
+				sb.append(Strings.eol);
+			}
+			sb.append("\t;").append(Strings.eol);
+		}
+		sb.append(Strings.eol);
+		sb.append("ID     : [a-zA-Z_] [a-zA-Z_0-9]* ;").append(Strings.eol);
+		sb.append("STRING : '\"' ~[\"]* '\"' ;").append(Strings.eol);
+		sb.append("NUMBER : [0-9]+ ;").append(Strings.eol);
+		sb.append("COMMA  : ',' ;").append(Strings.eol);
+		sb.append("WS     : [ \\t\\r\\n]+ -> skip ;").append(Strings.eol);
+		return sb.toString();
+	}
+
+	public String parser(String packageName) {
+		String parser = grammarName + "Parser";
+		StringBuilder sb = new StringBuilder();
+		sb.append("// Generated from ").append(grammarName).append(".g4 by ANTLR 4.5").append(Strings.eol);
+		sb.append("package ").append(packageName).append(".parser.gen;").append(Strings.eol);
+		sb.append("import org.antlr.v4.runtime.atn.*;").append(Strings.eol);
+		sb.append("import org.antlr.v4.runtime.*;").append(Strings.eol);
+		sb.append("import org.antlr.v4.runtime.tree.*;").append(Strings.eol);
+		sb.append("import java.util.List;").append(Strings.eol);
+		sb.append("import java.util.ArrayList;").append(Strings.eol).append(Strings.eol);
+		sb.append("public class ").append(parser).append(" extends Parser {").append(Strings.eol);
+		sb.append("\tpublic static final int").append(Strings.eol);
+		sb.append("\t\tID=1, STRING=2, NUMBER=3, COMMA=4, WS=5;").append(Strings.eol);
+
+		List<Rule> model = model();
+		sb.append("\tpublic static final int").append(Strings.eol).append("\t\t");
+		for (int idx = 0; idx < model.size(); idx++) {
+			if (idx > 0) sb.append(idx % 8 == 0 ? "," + Strings.eol + "\t\t" : ", ");
+			sb.append("RULE_").append(model.get(idx).name).append(" = ").append(idx);
+		}
+		sb.append(";").append(Strings.eol);
+
+		for (int idx = 0; idx < model.size(); idx++) {
+			Rule rule = model.get(idx);
+			String ctx = ctxName(rule.name);
+			sb.append(Strings.eol);
+			if (rule.altLabeled) {
+				sb.append("\tpublic static class ").append(ctx).append(" extends ParserRuleContext {")
+						.append(Strings.eol);
+				constructor(sb, ctx, rule.name);
+				sb.append("\t\tpublic ").append(ctx).append("() { }").append(Strings.eol);
+				sb.append("\t\tpublic void copyFrom(").append(ctx).append(" ctx) {").append(Strings.eol);
+				sb.append("\t\t\tsuper.copyFrom(ctx);").append(Strings.eol);
+				sb.append("\t\t}").append(Strings.eol);
+				sb.append("\t}").append(Strings.eol);
+				for (Alt alt : rule.alts) {
+					String altCtx = ctxName(alt.label);
+					sb.append("\tpublic static class ").append(altCtx).append(" extends ").append(ctx).append(" {")
+							.append(Strings.eol);
+					members(sb, parser, Collections.singletonList(alt));
+					sb.append("\t\tpublic ").append(altCtx).append("(").append(ctx).append(" ctx) { copyFrom(ctx); }")
+							.append(Strings.eol);
+					sb.append("\t}").append(Strings.eol);
+				}
+			} else {
+				sb.append("\tpublic static class ").append(ctx).append(" extends ParserRuleContext {")
+						.append(Strings.eol);
+				members(sb, parser, rule.alts);
+				constructor(sb, ctx, rule.name);
+				sb.append("\t}").append(Strings.eol);
+			}
+			function(sb, rule, idx);
+		}
+
+		sb.append(Strings.eol);
+		sb.append("\tpublic static final String _serializedATN =").append(Strings.eol);
+		sb.append("\t\t\"\\3\\u0430\\ud6d1\\u8206\\uad2d\\u4417\\uaef1\\u8d80\\uaadd\";").append(Strings.eol);
+		sb.append("}").append(Strings.eol);
+		return sb.toString();
+	}
+
+	private void constructor(StringBuilder sb, String ctx, String rule) {
+		sb.append("\t\tpublic ").append(ctx).append("(ParserRuleContext parent, int invokingState) {")
+				.append(Strings.eol);
+		sb.append("\t\t\tsuper(parent, invokingState);").append(Strings.eol);
+		sb.append("\t\t}").append(Strings.eol);
+		sb.append("\t\t@Override public int getRuleIndex() { return RULE_").append(rule).append("; }")
+				.append(Strings.eol);
+	}
+
+	/*
+	 * Emits the label fields, then the accessors, of the elements of the given alternatives. As with
+	 * the Antlr tool, an accessor is list valued where, in any one alternative, its element repeats
+	 * or is list valued itself.
+	 */
+	private void members(StringBuilder sb, String parser, List<Alt> alts) {
+		List<Elem> elems = new ArrayList<>();
+		for (Alt alt : alts) {
+			elems.addAll(alt.elems);
+		}
+		Set<String> implicit = new HashSet<>();
+		for (Elem elem : elems) {
+			if (elem.label == null) continue;
+			String type = elem.rule ? ctxName(elem.ref) : "Token";
+			if (elem.listLabel) {
+				// the tool adds an implicit label, named for the element, to collect from
+				if (implicit.add(elem.ref)) {
+					sb.append("\t\tpublic ").append(type).append(" ").append(elem.ref).append(";").append(Strings.eol);
+				}
+				sb.append("\t\tpublic List<").append(type).append("> ").append(elem.label).append(" = new ArrayList<")
+						.append(type).append(">();").append(Strings.eol);
+			} else {
+				sb.append("\t\tpublic ").append(type).append(" ").append(elem.label).append(";").append(Strings.eol);
+			}
+		}
+
+		Map<String, Boolean> refs = new LinkedHashMap<>();
+		for (Alt alt : alts) {
+			Set<String> seen = new HashSet<>();
+			for (Elem elem : alt.elems) {
+				boolean list = elem.suffix == '+' || elem.suffix == '*' || !seen.add(elem.ref);
+				Boolean prior = refs.get(elem.ref);
+				refs.put(elem.ref, list || (prior != null && prior));
+			}
+		}
+		for (Map.Entry<String, Boolean> ref : refs.entrySet()) {
+			String name = ref.getKey();
+			boolean token = Character.isUpperCase(name.charAt(0));
+			String type = token ? "TerminalNode" : ctxName(name);
+			if (ref.getValue()) {
+				sb.append("\t\tpublic List<").append(type).append("> ").append(name).append("() {").append(Strings.eol);
+				if (token) {
+					sb.append("\t\t\treturn getTokens(").append(parser).append(".").append(name).append(");");
+				} else {
+					sb.append("\t\t\treturn getRuleContexts(").append(type).append(".class);");
+				}
+				sb.append(Strings.eol).append("\t\t}").append(Strings.eol);
+				sb.append("\t\tpublic ").append(type).append(" ").append(name).append("(int i) {").append(Strings.eol);
+				if (token) {
+					sb.append("\t\t\treturn getToken(").append(parser).append(".").append(name).append(", i);");
+				} else {
+					sb.append("\t\t\treturn getRuleContext(").append(type).append(".class,i);");
+				}
+				sb.append(Strings.eol).append("\t\t}").append(Strings.eol);
+			} else if (token) {
+				sb.append("\t\tpublic TerminalNode ").append(name).append("() { return getToken(").append(parser)
+						.append(".").append(name).append(", 0); }").append(Strings.eol);
+			} else {
+				sb.append("\t\tpublic ").append(type).append(" ").append(name).append("() {").append(Strings.eol);
+				sb.append("\t\t\treturn getRuleContext(").append(type).append(".class,0);").append(Strings.eol);
+				sb.append("\t\t}").append(Strings.eol);
+			}
+		}
+	}
+
+	// rule function, with a body of representative size
+	private void function(StringBuilder sb, Rule rule, int idx) {
+		String ctx = ctxName(rule.name);
+		sb.append(Strings.eol);
+		sb.append("\tpublic final ").append(ctx).append(" ").append(rule.name)
+				.append("() throws RecognitionException {").append(Strings.eol);
+		sb.append("\t\t").append(ctx).append(" _localctx = new ").append(ctx).append("(_ctx, getState());")
+				.append(Strings.eol);
+		sb.append("\t\tenterRule(_localctx, ").append(idx * 2).append(", RULE_").append(rule.name).append(");")
+				.append(Strings.eol);
+		sb.append("\t\ttry {").append(Strings.eol);
+		sb.append("\t\t\tsetState(").append(idx * 8).append(");").append(Strings.eol);
+		sb.append("\t\t\tswitch ( getInterpreter().adaptivePredict(_input,").append(idx)
+				.append(",_ctx) ) {").append(Strings.eol);
+		for (int alt = 0; alt < rule.alts.size(); alt++) {
+			sb.append("\t\t\tcase ").append(alt + 1).append(":").append(Strings.eol);
+			if (rule.altLabeled) {
+				String altCtx = ctxName(rule.alts.get(alt).label);
+				sb.append("\t\t\t\t_localctx = new ").append(altCtx).append("(_localctx);").append(Strings.eol);
+			}
+			sb.append("\t\t\t\tenterOuterAlt(_localctx, ").append(alt + 1).append(");").append(Strings.eol);
+			for (Elem elem : rule.alts.get(alt).elems) {
+				sb.append("\t\t\t\tsetState(").append(idx * 8 + alt + 1).append(");").append(Strings.eol);
+				sb.append("\t\t\t\t").append(elem.rule ? elem.ref + "()" : "match(" + elem.ref + ")").append(";")
+						.append(Strings.eol);
+			}
+			sb.append("\t\t\t\tbreak;").append(Strings.eol);
+		}
+		sb.append("\t\t\t}").append(Strings.eol);
+		sb.append("\t\t}").append(Strings.eol);
+		sb.append("\t\tcatch (RecognitionException re) {").append(Strings.eol);
+		sb.append("\t\t\t_localctx.exception = re;").append(Strings.eol);
+		sb.append("\t\t\t_errHandler.reportError(this, re);").append(Strings.eol);
+		sb.append("\t\t\t_errHandler.recover(this, re);").append(Strings.eol);
+		sb.append("\t\t}").append(Strings.eol);
+		sb.append("\t\tfinally {").append(Strings.eol);
+		sb.append("\t\t\texitRule();").append(Strings.eol);
+		sb.append("\t\t}").append(Strings.eol);
+		sb.append("\t\treturn _localctx;").append(Strings.eol);
+		sb.append("\t}").append(Strings.eol);
+	}
+
+	private String ctxName(String name) {
+		return Strings.initialUC(name) + "Context";
+	}
+
+	// ///////////////////////////////////////////////////////////////////////////
+
+	private List<Rule> model() {
+		if (rules != null) return rules;
+		Random rand = new Random(seed);
+		List<String> names = new ArrayList<>();
+		for (int idx = 0; idx < ruleCnt; idx++) {
+			names.add(ruleBases[idx % ruleBases.length] + idx);
+		}
+
+		rules = new ArrayList<>();
+		for (int idx = 0; idx < ruleCnt; idx++) {
+			Rule rule = new Rule(names.get(idx));
+			int altCnt = 1 + rand.nextInt(Math.max(1, alternatives));
+			rule.altLabeled = altCnt > 1 && rand.nextDouble() < altLabels;
+			Set<String> labels = new LinkedHashSet<>();
+			for (int a = 0; a < altCnt; a++) {
+				Alt alt = new Alt();
+				if (rule.altLabeled) alt.label = Strings.initialUC(rule.name) + "Alt" + (a + 1);
+				int elemCnt = 1 + rand.nextInt(Math.max(1, elements));
+				// the first element of each alternative is a distinct token, for a simple decision
+				alt.elems.add(new Elem(tokens[a % tokens.length], false));
+				for (int e = 1; e < elemCnt; e++) {
+					Elem elem;
+					int remaining = ruleCnt - idx - 1;
+					if (remaining > 0 && rand.nextBoolean()) {
+						elem = new Elem(names.get(idx + 1 + rand.nextInt(Math.min(remaining, 8))), true);
+					} else {
+						elem = new Elem(tokens[rand.nextInt(tokens.length)], false);
+					}
+					if (rand.nextDouble() < lists) elem.suffix = rand.nextBoolean() ? '+' : '*';
+					if (rand.nextDouble() < labeled) {
+						String label = (elem.rule ? "sub" : "tok") + e;
+						// a label is single or list valued throughout the rule
+						elem.listLabel = elem.suffix != 0;
+						label = elem.listLabel ? label + "s" : label;
+						if (labels.add(label + ":" + elem.ref) && !clashes(labels, label, elem.ref)) {
+							elem.label = label;
+						} else {
+							elem.listLabel = false;
+						}
+					}
+					alt.elems.add(elem);
+				}
+				rule.alts.add(alt);
+			}
+			rules.add(rule);
+		}
+		return rules;
+	}
+
+	// true where the label is already used for a different element reference
+	private boolean clashes(Set<String> labels, String label, String ref) {
+		for (String used : labels) {
+			if (used.startsWith(label + ":") && !used.equals(label + ":" + ref)) return true;
+		}
+		return false;
+	}
+
+	private static class Rule {
+
+		final String name;
+		final List<Alt> alts = new ArrayList<>();
+		boolean altLabeled;
+
+		Rule(String name) {
+			this.name = name;
+		}
+	}
+
+	private static class Alt {
+
+		String label;
+		final List<Elem> elems = new ArrayList<>();
+	}
+
+	private static class Elem {
+
+		final String ref;
+		final boolean rule;
+		String label;
+		boolean listLabel;
+		char suffix;
+
+		Elem(String ref, boolean rule) {
+			this.ref = ref;
+			this.rule = rule;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.certiv.antlr.project.Benchmarks;
+import net.certiv.antlr.project.gen.spec.Settings;
+import net.certiv.antlr.project.util.Log;
+import net.certiv.antlr.project.util.Log.LogLevel;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Project fixture for the generator benchmarks: a configuration for a project in a temporary
+ * directory, holding a synthetic grammar and its generated parser, and using the rule set and
+ * template groups of the benchmark project directory. The grammar and package are named as the
+ * model of the rule set, so that generated files can be fed back to the regenerator.
+ */
+public class GenFixture {
+
+	final File projectDir;
+	final GenOptions opts;
+	final GenConfig config;
+	final Corpus corpus;
+	final File parser;
+
+	/**
+	 * @param projectDir
+	 *            the project directory; the generated parser is written here
+	 * @param rules
+	 *            the number of parser rules of the grammar
+	 * @param args
+	 *            generator command line options, if any
+	 */
+	public GenFixture(File projectDir, int rules, String... args) throws IOException {
+		Log.defLevel(LogLevel.Warn);
+		this.projectDir = projectDir;
+
+		opts = new GenOptions();
+		if (!opts.processOptions(args)) throw new IOException("Invalid benchmark options");
+
+		Settings settings = new Settings();
+		settings.projectPath = projectDir.getPath();
+		settings.sourcePath = "src";
+		settings.testPath = "test";
+		settings.javaPath = System.getProperty("java.home");
+		settings.antlrPathname = "antlr-4.5-complete.jar";
+		settings.genProjJarPathname = "GenProject-2.2-complete.jar";
+		settings.rulesPathname = Benchmarks.ruleSetPathname();
+
+		config = new GenConfig(projectDir.getPath(), opts, settings);
+		if (!config.loadRuleSet(settings.rulesPathname)) {
+			throw new IOException("Rule set load failed: " + settings.rulesPathname);
+		}
+		config.getRuleSet().projectBasePath = Benchmarks.basePath();
+		settings.grammarName = config.getRuleSet().modelGrammar;
+		settings.packageName = config.getRuleSet().modelBasePackage;
+
+		corpus = new Corpus(settings.grammarName, rules);
+		parser = corpus.writeParser(new File(config.getGenParserPathname()), settings.packageName);
+		corpus.writeGrammar(parser.getParentFile().getParentFile());
+	}
+
+	/** Returns productions over the fixture; the parser contexts are extracted on creation */
+	public Productions productions() {
+		return new Productions(opts, config);
+	}
+
+	public void dispose() throws IOException {
+		FileUtils.deleteDirectory(projectDir);
+	}
+}
@@ -0,0 +1,57 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.certiv.antlr.project.base.CtxMethod;
+import net.certiv.antlr.project.util.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extraction of the parser contexts from small, medium, and huge generated parsers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseParserBench {
+
+	@Param({ "10", "1000", "10000" })
+	public int rules;
+
+	private GenFixture fixture;
+	private Productions funcs;
+
+	@Setup
+	public void setup() throws IOException {
+		fixture = new GenFixture(Utils.createTmpDir(), rules);
+		funcs = fixture.productions();
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		fixture.dispose();
+	}
+
+	@Benchmark
+	public Map<String, List<CtxMethod>> parseParser() throws IOException {
+		funcs.parseParser(fixture.parser);
+		return fixture.config.getContextMethods();
+	}
+}
@@ -0,0 +1,182 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import net.certiv.antlr.project.base.MemorySink;
+import net.certiv.antlr.project.regen.RoundTrip;
+import net.certiv.antlr.project.regen.spec.Unit;
+import net.certiv.antlr.project.util.Strings;
+import net.certiv.antlr.project.util.Utils;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Measures each generation stage over synthetic grammars of increasing size, and writes the
+ * resulting scaling curves as csv: stage, rules, contexts, median milliseconds, and allocated
+ * megabytes per run.
+ *
+ * <pre>
+ * java -cp jars/GenBench.jar net.certiv.antlr.project.gen.Scaling [rules ...]
+ * </pre>
+ *
+ * The rule counts default to 10, 1000, and 10000. The number of measured runs per stage is set by
+ * <code>-Dbench.runs=5</code>, and the csv pathname by <code>-Dbench.out=scaling.csv</code>.
+ */
+public class Scaling {
+
+	private static final int[] defaultSizes = { 10, 1000, 10000 };
+	private static final String descriptorUnit = "ArrayDescriptor";
+	private static final String[] phaseUnits = { "JsonPhase02", "JsonPhase03" };
+	private static final String[] regenVars = { "packageName", "grammarName", "startRule" };
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final int runs = Integer.getInteger("bench.runs", 5);
+	private final List<String> rows = new ArrayList<>();
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = defaultSizes;
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int idx = 0; idx < args.length; idx++) {
+				sizes[idx] = Integer.parseInt(args[idx]);
+			}
+		}
+		Scaling scaling = new Scaling();
+		for (int rules : sizes) {
+			scaling.measure(rules);
+		}
+		scaling.write(new File(System.getProperty("bench.out", "scaling.csv")));
+	}
+
+	private void measure(int rules) throws Exception {
+		final GenFixture fixture = new GenFixture(Utils.createTmpDir(), rules);
+		try {
+			final Productions funcs = fixture.productions();
+			final Map<String, Unit> units = fixture.config.getRuleSet().units;
+			int contexts = fixture.corpus.contexts();
+
+			time("parser.parse", rules, contexts, new Callable<Object>() {
+
+				@Override
+				public Object call() throws IOException {
+					return funcs.parseParser(fixture.parser);
+				}
+			});
+			time("descriptors", rules, contexts, new Callable<Object>() {
+
+				@Override
+				public Object call() {
+					return render(fixture, funcs, units.get(descriptorUnit));
+				}
+			});
+			time("phases", rules, contexts, new Callable<Object>() {
+
+				@Override
+				public Object call() {
+					MemorySink sink = null;
+					for (String name : phaseUnits) {
+						sink = render(fixture, funcs, units.get(name));
+					}
+					return sink;
+				}
+			});
+
+			// the regenerator round trip takes the largest generated phase file as its model
+			MemorySink sink = render(fixture, funcs, units.get(phaseUnits[0]));
+			byte[] model = sink.getContent(fixture.config.getGenPathname(units.get(phaseUnits[0])));
+			final RoundTrip trip = new RoundTrip(phaseUnits[0], units.get(phaseUnits[0]).templateGroup,
+					Arrays.asList(regenVars), new String(model, "UTF-8"));
+			try {
+				time("regen", rules, contexts, new Callable<Object>() {
+
+					@Override
+					public Object call() throws IOException {
+						return trip.run();
+					}
+				});
+			} finally {
+				trip.dispose();
+			}
+		} finally {
+			fixture.dispose();
+		}
+
+		// the compact descriptor table, in place of the per-context descriptors
+		final GenFixture compact = new GenFixture(Utils.createTmpDir(), rules, "-k");
+		try {
+			final Productions funcs = compact.productions();
+			final Unit unit = compact.config.getRuleSet().units.get(descriptorUnit);
+			time("table", rules, compact.corpus.contexts(), new Callable<Object>() {
+
+				@Override
+				public Object call() {
+					return render(compact, funcs, unit);
+				}
+			});
+		} finally {
+			compact.dispose();
+		}
+	}
+
+	// plans and executes the given unit alone, as a generation run would, with output held in memory
+	private MemorySink render(GenFixture fixture, Productions funcs, Unit unit) {
+		MemorySink sink = new MemorySink();
+		fixture.config.setSink(sink);
+		funcs.execute(funcs.plan(Collections.singletonList(unit)));
+		return sink;
+	}
+
+	// median time and allocation over the measured runs, after as many warmup runs
+	private void time(String stage, int rules, int contexts, Callable<Object> op) throws Exception {
+		for (int idx = 0; idx < runs; idx++) {
+			op.call();
+		}
+		List<Long> nanos = new ArrayList<>();
+		List<Long> allocs = new ArrayList<>();
+		for (int idx = 0; idx < runs; idx++) {
+			long alloc = allocated();
+			long beg = System.nanoTime();
+			op.call();
+			nanos.add(System.nanoTime() - beg);
+			allocs.add(allocated() - alloc);
+		}
+		Collections.sort(nanos);
+		Collections.sort(allocs);
+		double ms = nanos.get(runs / 2) / 1e6;
+		double mb = allocs.get(runs / 2) / (1024.0 * 1024.0);
+		String row = String.format("%s,%d,%d,%.3f,%.3f", stage, rules, contexts, ms, mb);
+		rows.add(row);
+		System.out.println(String.format("%-14s rules=%-6d contexts=%-6d %10.3f ms %10.3f MB", stage, rules,
+				contexts, ms, mb));
+	}
+
+	// bytes allocated so far by all live threads, including the I/O pool; 0 if unsupported
+	private long allocated() {
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) return 0;
+		long total = 0;
+		long[] ids = threads.getAllThreadIds();
+		for (long alloc : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(ids)) {
+			if (alloc > 0) total += alloc;
+		}
+		return total;
+	}
+
+	private void write(File file) throws IOException {
+		StringBuilder sb = new StringBuilder("stage,rules,contexts,millis,allocMB").append(Strings.eol);
+		for (String row : rows) {
+			sb.append(row).append(Strings.eol);
+		}
+		FileUtils.writeStringToFile(file, sb.toString());
+		System.out.println("Scaling curves written to " + file.getCanonicalPath());
+	}
+}
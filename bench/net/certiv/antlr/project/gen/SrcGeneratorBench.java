@@ -0,0 +1,77 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import net.certiv.antlr.project.base.MemorySink;
+import net.certiv.antlr.project.regen.spec.Unit;
+import net.certiv.antlr.project.util.Utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Execution of the generation plan of a non-descriptor unit, and of a descriptor unit over every
+ * parser context. Output is held in memory, so file system costs are excluded; template groups are
+ * compiled once, in setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SrcGeneratorBench {
+
+	@Param({ "JsonMain", "ArrayDescriptor" })
+	public String unitName;
+
+	@Param({ "20" })
+	public int rules;
+
+	private GenFixture fixture;
+	private Productions funcs;
+	private GenPlan plan;
+
+	@Setup
+	public void setup() throws IOException {
+		fixture = new GenFixture(Utils.createTmpDir(), rules);
+		funcs = fixture.productions();
+		Unit unit = fixture.config.getRuleSet().units.get(unitName);
+		if (unit == null) {
+			fixture.dispose();
+			throw new IOException("Unit not found in the rule set: " + unitName);
+		}
+
+		plan = funcs.plan(Collections.singletonList(unit));
+		fixture.config.setSink(new MemorySink());
+		if (!funcs.execute(plan)) {
+			fixture.dispose();
+			throw new IOException("Failed to execute the plan of unit: " + unitName);
+		}
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		fixture.dispose();
+	}
+
+	@Benchmark
+	public MemorySink execute() {
+		MemorySink sink = new MemorySink();
+		fixture.config.setSink(sink);
+		funcs.execute(plan);
+		return sink;
+	}
+}
@@ -0,0 +1,98 @@
+package net.certiv.antlr.project.regen;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.certiv.antlr.project.Benchmarks;
+import net.certiv.antlr.project.base.ConfigBase;
+import net.certiv.antlr.project.regen.spec.RuleSet;
+import net.certiv.antlr.project.util.Log;
+import net.certiv.antlr.project.util.Log.LogLevel;
+import net.certiv.antlr.project.util.Strings;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of a model file to template form: fragment extraction, escaping, and the template
+ * variable substitutions, over model files of increasing length.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessUnitBench {
+
+	private static final String[] vars = { "packageName", "grammarName", "contextName", "startRule" };
+
+	@Param({ "100", "1000", "10000" })
+	public int lines;
+
+	private RoundTrip trip;
+
+	@Setup
+	public void setup() throws IOException {
+		Log.defLevel(LogLevel.Warn);
+		ConfigBase config = new ConfigBase();
+		if (!config.loadRuleSet(Benchmarks.ruleSetPathname())) throw new IOException("Rule set load failed");
+		trip = new RoundTrip("BenchModel", "Descriptor", Arrays.asList(vars), model(config.getRuleSet()));
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		trip.dispose();
+	}
+
+	@Benchmark
+	public Map<String, String> processUnit() throws IOException {
+		return trip.run();
+	}
+
+	// model source with the given number of lines, each containing some of the search text
+	private String model(RuleSet rules) {
+		String pkg = rules.variables.get("packageName").search;
+		String grammar = rules.variables.get("grammarName").search;
+		String ctx = rules.variables.get("contextName").search;
+		String start = rules.variables.get("startRule").search;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(pkg).append(".converter;").append(Strings.eol);
+		for (int idx = 0; idx < lines; idx++) {
+			switch (idx % 5) {
+				case 0:
+					sb.append("import ").append(pkg).append(".parser.gen.").append(grammar).append("Parser.")
+							.append(ctx).append("Context;");
+					break;
+				case 1:
+					sb.append("\tpublic ").append(ctx).append("Descriptor ").append(start).append(idx)
+							.append("(").append(ctx).append("Context ctx) {");
+					break;
+				case 2:
+					sb.append("\t\tString s = \"<").append(grammar).append(">\\t{}\" + ctx.getText(); // ")
+							.append(idx);
+					break;
+				case 3:
+					sb.append("\t\treturn new ").append(ctx).append("Descriptor(ctx, s);");
+					break;
+				default:
+					sb.append("\t}");
+			}
+			sb.append(Strings.eol);
+		}
+		return sb.toString();
+	}
+}
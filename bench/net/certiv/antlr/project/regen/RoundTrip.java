@@ -0,0 +1,88 @@
+package net.certiv.antlr.project.regen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.certiv.antlr.project.Benchmarks;
+import net.certiv.antlr.project.base.TypeOf;
+import net.certiv.antlr.project.regen.spec.RuleSet;
+import net.certiv.antlr.project.regen.spec.Template;
+import net.certiv.antlr.project.regen.spec.Unit;
+import net.certiv.antlr.project.util.Log;
+import net.certiv.antlr.project.util.Log.LogLevel;
+import net.certiv.antlr.project.util.Strings;
+import net.certiv.antlr.project.util.Utils;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Regenerator fixture: converts given model content back to template form, as a rule set unit of
+ * the named template group, using the rule set of the benchmark project directory.
+ */
+public class RoundTrip {
+
+	private final File tmpDir;
+	private final RuleSet rules;
+	private final ReGen reGen;
+	private final Unit unit;
+	private final Template tmpl;
+
+	/**
+	 * @param unitName
+	 *            name of the unit to create
+	 * @param templateGroup
+	 *            name of the template group of the unit
+	 * @param templateVars
+	 *            rule set variables to substitute
+	 * @param content
+	 *            the model content; wrapped by the template group divider
+	 */
+	public RoundTrip(String unitName, String templateGroup, List<String> templateVars, String content)
+			throws IOException {
+		Log.defLevel(LogLevel.Warn);
+		tmpDir = Utils.createTmpDir();
+
+		ReGenOpts opts = new ReGenOpts();
+		if (!opts.processOptions(new String[] { Benchmarks.ruleSetPathname() })) {
+			throw new IOException("Invalid benchmark options");
+		}
+		ReGenConfig config = new ReGenConfig(opts);
+		if (!config.loadRuleSet()) throw new IOException("Rule set load failed");
+		rules = config.getRuleSet();
+		rules.projectBasePath = Benchmarks.basePath();
+		rules.modelBasePath = tmpDir.getPath();
+
+		unit = new Unit();
+		unit.modelRoot = "";
+		unit.modelPackage = "";
+		unit.modelFilename = unitName + ".java";
+		unit.unitName = unitName;
+		unit.primary = true;
+		unit.unitType = TypeOf.util;
+		unit.templateVars = new ArrayList<>(templateVars);
+		unit.parts = new ArrayList<>();
+		unit.templateGroup = templateGroup;
+
+		reGen = new ReGen(config, tmpDir);
+		tmpl = reGen.fetchTemplateGroup(unit);
+		String divider = tmpl.divider == null ? "" : tmpl.divider.replace(tmpl.marker, unitName) + Strings.eol;
+		FileUtils.writeStringToFile(new File(config.getUnitPathname(unit)), divider + content + divider);
+	}
+
+	public RuleSet getRuleSet() {
+		return rules;
+	}
+
+	/** Converts the model content; returns the template fragments */
+	public Map<String, String> run() throws IOException {
+		return reGen.processUnit(unit, tmpl);
+	}
+
+	public void dispose() throws IOException {
+		reGen.closeTemplateGroups();
+		FileUtils.deleteDirectory(tmpDir);
+	}
+}
@@ -1,10 +1,15 @@
 package net.certiv.antlr.project.base;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.certiv.antlr.project.regen.spec.RuleSet;
 import net.certiv.antlr.project.regen.spec.Template;
@@ -12,8 +17,7 @@ import net.certiv.antlr.project.regen.spec.Unit;
 import net.certiv.antlr.project.regen.spec.Variable;
 import net.certiv.antlr.project.util.Log;
 import net.certiv.antlr.project.util.Strings;
-
-import org.apache.commons.io.FileUtils;
+import net.certiv.antlr.project.util.Utils;
 
 import com.google.gson.JsonSyntaxException;
 
@@ -24,8 +28,25 @@ public class ConfigBase {
 	public static final String rulesetExt = ".json";
 	public static final String templateGroupExt = ".stg";
 
+	private static final OutputSink local = new FileSink();
+
+	// generated files are encoded in UTF-8, whether written whole or streamed
+	private static final Charset charset = StandardCharsets.UTF_8;
+
 	private RuleSet rules;		// the values represented in the persisted file
+	private RuleSetIndex index;	// indexed view of the rule set units
 	private String pathname;	// actual rule set pathname
+	private OutputSink sink = local;	// destination of generated files
+	private boolean snapshot;			// load the rule set through a binary snapshot
+
+	private final AtomicInteger written = new AtomicInteger();		// files written to the sink
+	private final AtomicInteger unchanged = new AtomicInteger();	// identical files not rewritten
+
+	private enum Outcome {
+		kept,		// existing file left as is
+		unchanged,	// existing file has identical content
+		written
+	}
 
 	public ConfigBase() {
 		super();
@@ -47,8 +68,25 @@ public class ConfigBase {
 		this.pathname = pathname;
 	}
 
+	/** Returns the destination of the files written by {@link #writeFile} and {@link #openFile} */
+	public OutputSink getSink() {
+		return sink;
+	}
+
+	public void setSink(OutputSink sink) {
+		this.sink = sink != null ? sink : local;
+	}
+
+	/**
+	 * Sets whether the rule set is loaded through a binary snapshot kept next to the json file. The
+	 * snapshot is used while the json content is unchanged, and is remade when it is not.
+	 */
+	public void setSnapshot(boolean snapshot) {
+		this.snapshot = snapshot;
+	}
+
 	public boolean isRuleSetLoaded() {
-		return this.rules.loaded;
+		return this.rules != null && this.rules.loaded;
 	}
 
 	public RuleSet getRuleSet() {
@@ -57,6 +95,12 @@ public class ConfigBase {
 
 	public void setRuleSet(RuleSet rules) {
 		this.rules = rules;
+		this.index = rules != null ? new RuleSetIndex(rules) : null;
+	}
+
+	/** Returns the indexed view of the units of the current rule set */
+	public RuleSetIndex getIndex() {
+		return index;
 	}
 
 	/**
@@ -64,18 +108,44 @@ public class ConfigBase {
 	 */
 	public boolean loadRuleSet(String pathname) {
 		try {
-			RuleSet rules = (RuleSet) readJsonFile(pathname, RuleSet.class);
+			String hash = snapshot ? Utils.hash(new File(pathname)) : null;
+			RuleSet rules = snapshot ? readSnapshot(pathname, hash) : null;
+			boolean parsed = rules == null;
+			if (parsed) rules = (RuleSet) readJsonFile(pathname, RuleSet.class);
 			if (!magicIdRules.equals(rules.magicId)) {
 				throw new IOException("Wrong magicId - not a valid configuration file: " + pathname);
 			}
+			if (snapshot && parsed) writeSnapshot(pathname, hash, rules);
 			this.pathname = pathname;
-			this.rules = rules;
+			setRuleSet(rules);
 			this.rules.loaded = true;
 			Log.info(this, "Loaded rule set: " + pathname);
 		} catch (IOException | JsonSyntaxException e) {
 			Log.debug(this, "Not a valid rule set: " + pathname + " [" + e.getMessage() + "]");
 		}
-		return this.rules.loaded;
+		return isRuleSetLoaded();
+	}
+
+	private RuleSet readSnapshot(String pathname, String hash) {
+		File file = RuleSetSnapshot.snapshotFile(new File(pathname));
+		try {
+			RuleSet rules = RuleSetSnapshot.read(file, hash);
+			if (rules != null) Log.debug(this, "Using rule set snapshot: " + file.getPath());
+			return rules;
+		} catch (IOException e) {
+			Log.debug(this, "Ignoring rule set snapshot: " + file.getPath() + " [" + e.getMessage() + "]");
+			return null;
+		}
+	}
+
+	private void writeSnapshot(String pathname, String hash, RuleSet rules) {
+		File file = RuleSetSnapshot.snapshotFile(new File(pathname));
+		try {
+			RuleSetSnapshot.write(file, hash, rules);
+			Log.debug(this, "Wrote rule set snapshot: " + file.getPath());
+		} catch (IOException e) {
+			Log.warn(this, "Failed to write rule set snapshot: " + file.getPath() + " [" + e.getMessage() + "]");
+		}
 	}
 
 	public Object readJsonFile(String pathname, Class<?> form) throws JsonSyntaxException, IOException {
@@ -83,12 +153,7 @@ public class ConfigBase {
 		if (!file.isFile()) {
 			throw new IOException("Not found or not a regular file: " + file.getPath());
 		}
-
-		GsonGen gson = new GsonGen();
-		gson.configDefaultBuilder();
-		gson.create();
-		String content = FileUtils.readFileToString(file);
-		return gson.fromJson(content, form);
+		return JsonStore.read(file, form);
 	}
 
 	/**
@@ -107,34 +172,143 @@ public class ConfigBase {
 	}
 
 	public void saveObj2Json(String filename, Object obj, boolean compact, boolean overwrite) throws IOException {
-		GsonGen gson = new GsonGen();
-		if (compact) {
-			gson.configBasicBuilder();
-		} else {
-			gson.configDefaultBuilder();
-		}
-		gson.create();
+		// configuration files are always local
+		File file = new File(filename);
+		if (file.isFile() && !overwrite) return;
 		try {
-			String json = gson.toJson(obj);
-			writeFile(filename, json, overwrite);
+			if (JsonStore.write(file, obj, compact)) {
+				Log.info(this, "Writing to " + filename);
+			} else {
+				Log.debug(this, "Content unchanged; not rewriting " + filename);
+			}
 		} catch (IOException | JsonSyntaxException e) {
 			Log.error(this, "Failed to save configuration file " + filename, e);
 			throw e;
 		}
 	}
 
-	public void writeFile(String filename, String contents, boolean overwrite) throws IOException {
-		File file = new File(filename);
-		if (file.exists() && file.isFile()) {
-			if (!overwrite) return;
-			if (!file.delete()) {
-				throw new IOException("Failed to delete preexisting file: " + filename);
-			}
+	/**
+	 * Writes the contents to the named file in the output sink. An existing file with identical
+	 * content is not rewritten, leaving its modification time unchanged.
+	 * 
+	 * @return true if the file holds the given contents; false if an existing file was left as is
+	 * @throws IOException
+	 */
+	public boolean writeFile(String filename, String contents, boolean overwrite) throws IOException {
+		Outcome outcome = writeFile(sink, filename, contents, overwrite);
+		if (outcome == Outcome.written) written.incrementAndGet();
+		if (outcome == Outcome.unchanged) unchanged.incrementAndGet();
+		return outcome != Outcome.kept;
+	}
+
+	private Outcome writeFile(OutputSink sink, String filename, String contents, boolean overwrite)
+			throws IOException {
+		boolean exists = sink.isFile(filename);
+		if (exists && !overwrite) return Outcome.kept;
+		byte[] content = contents.getBytes(charset);
+		if (exists && sink.matches(filename, content)) {
+			Log.debug(this, "Content unchanged; not rewriting " + filename);
+			return Outcome.unchanged;
 		}
 		Log.info(this, "Writing to " + filename);
-		file = new File(filename);
-		FileUtils.writeStringToFile(file, contents);
+		try (OutputStream out = sink.open(filename)) {
+			out.write(content);
+		}
 		Log.debug(this, "Write complete.");
+		return Outcome.written;
+	}
+
+	/**
+	 * Opens a buffered writer on the named file in the output sink, observing the same encoding and
+	 * overwrite rules as {@link #writeFile(String, String, boolean)}. Missing parent directories are
+	 * created.
+	 * <p>
+	 * Where an existing file is to be overwritten, the output is staged by the sink until the
+	 * writer is closed, and then replaces the existing content only where different; an identical
+	 * file is not rewritten. Output that fails part way is abandoned through
+	 * {@link OutputWriter#discard()}.
+	 * 
+	 * @return the writer; null if an existing file is to be left unchanged
+	 * @throws IOException
+	 */
+	public OutputWriter openFile(String filename, boolean overwrite) throws IOException {
+		if (!sink.isFile(filename)) {
+			Log.info(this, "Writing to " + filename);
+			return new OutputWriter(sink, filename, sink.open(filename), null);
+		}
+		if (!overwrite) return null;
+		OutputSink.Staged staged = sink.stage(filename);
+		return new OutputWriter(sink, filename, staged.stream(), staged);
+	}
+
+	/**
+	 * Writer on a file in the output sink, as opened by {@link ConfigBase#openFile}. A new file is
+	 * written directly to the sink; output to an existing file is staged by the sink until closed.
+	 */
+	public class OutputWriter extends BufferedWriter {
+
+		private final OutputSink target;
+		private final String filename;
+		private final OutputSink.Staged staged;	// null => writing a new file directly to the sink
+		private boolean discarded;
+		private boolean closed;
+
+		private OutputWriter(OutputSink target, String filename, OutputStream out, OutputSink.Staged staged) {
+			super(new OutputStreamWriter(out, charset));
+			this.target = target;
+			this.filename = filename;
+			this.staged = staged;
+		}
+
+		/**
+		 * Abandons the output. A file created by this writer is removed from the sink; an existing
+		 * file is left untouched.
+		 * 
+		 * @throws IOException
+		 */
+		public void discard() throws IOException {
+			if (closed) return;
+			discarded = true;
+			try {
+				close();
+			} finally {
+				if (staged == null) {
+					target.delete(filename);
+				} else {
+					staged.close();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) return;
+			closed = true;
+			try {
+				super.close();
+			} catch (IOException e) {
+				if (staged != null) staged.close();
+				throw e;
+			}
+			if (discarded) return;
+			if (staged == null) {
+				written.incrementAndGet();
+				return;
+			}
+
+			if (!staged.commit()) {
+				Log.debug(ConfigBase.this, "Content unchanged; not rewriting " + filename);
+				unchanged.incrementAndGet();
+				return;
+			}
+			Log.info(ConfigBase.this, "Writing to " + filename);
+			written.incrementAndGet();
+		}
+	}
+
+	/** Reports the number of files written and left unchanged through the output sink */
+	public String outputReport() {
+		return "Output files: written=" + written.get() + ", unchanged=" + unchanged.get();
 	}
 
 	// ==========================================================================================================
@@ -204,18 +378,26 @@ public class ConfigBase {
 	 * 
 	 * @param uType
 	 *            the unit TypeOf to select against
-	 * @return
+	 * @return an unmodifiable view, in rule set order
 	 */
 	public Map<String, Unit> getUnits(TypeOf uType) {
-		Map<String, Unit> typedUnits = new HashMap<>();
-		Map<String, Unit> units = getUnits();
-		for (String key : units.keySet()) {
-			Unit unit = units.get(key);
-			if (unit.unitType.equals(uType)) {
-				typedUnits.put(key, unit);
-			}
-		}
-		return typedUnits;
+		return index.units(uType);
+	}
+
+	/**
+	 * Adds or replaces the named unit of the rule set, keeping the index current
+	 */
+	public void putUnit(String name, Unit unit) {
+		rules.units.put(name, unit);
+		index.put(name, unit);
+	}
+
+	/**
+	 * Re-indexes the named unit after its type, group, package, primary flag, parts, or variables
+	 * were changed in place
+	 */
+	public void updateUnit(String name) {
+		index.update(name);
 	}
 
 	/**
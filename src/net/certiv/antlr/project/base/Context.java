@@ -7,4 +7,7 @@ public class Context {
 	public String ctxName;
 	public List<CtxMethod> ctxMethods;
 
+	public String ruleName;		// name of the parser rule of the context
+	public List<Context> alts;	// contexts of the labeled alternatives of the rule; base context only
+
 }
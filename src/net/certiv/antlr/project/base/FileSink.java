@@ -0,0 +1,123 @@
+package net.certiv.antlr.project.base;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Writes generated files as loose files to the local file system.
+ */
+public class FileSink implements OutputSink {
+
+	@Override
+	public boolean isFile(String pathname) {
+		return new File(pathname).isFile();
+	}
+
+	/*
+	 * Compares sizes first; only files of equal size are read and compared by content. The file is
+	 * not mapped, as a mapping held until collected would block the rewrite that follows a mismatch
+	 * on some platforms.
+	 */
+	@Override
+	public boolean matches(String pathname, byte[] content) throws IOException {
+		File file = new File(pathname);
+		if (!file.isFile() || file.length() != content.length) return false;
+		return Arrays.equals(Files.readAllBytes(file.toPath()), content);
+	}
+
+	@Override
+	public byte[] read(String pathname) throws IOException {
+		File file = new File(pathname);
+		if (!file.isFile()) return null;
+		return Files.readAllBytes(file.toPath());
+	}
+
+	@Override
+	public OutputStream open(String pathname) throws IOException {
+		return new BufferedOutputStream(FileUtils.openOutputStream(new File(pathname)));
+	}
+
+	/*
+	 * The output is staged to a temporary file in the directory of the target. On commit, the two
+	 * are compared by streaming, and the temporary file is then moved over the target, atomically
+	 * where the file system supports it; the output is not held in memory.
+	 */
+	@Override
+	public Staged stage(String pathname) throws IOException {
+		final File file = new File(pathname).getAbsoluteFile();
+		FileUtils.forceMkdir(file.getParentFile());
+		final File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		final OutputStream out;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(tmp));
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp.toPath());
+			throw e;
+		}
+		return new Staged() {
+
+			@Override
+			public OutputStream stream() {
+				return out;
+			}
+
+			@Override
+			public boolean commit() throws IOException {
+				try {
+					out.close();
+					if (file.isFile() && file.length() == tmp.length() && FileUtils.contentEquals(tmp, file)) {
+						return false;
+					}
+					try {
+						Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+								StandardCopyOption.REPLACE_EXISTING);
+					} catch (AtomicMoveNotSupportedException e) {
+						Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+					return true;
+				} finally {
+					close();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				try {
+					out.close();
+				} finally {
+					Files.deleteIfExists(tmp.toPath());
+				}
+			}
+		};
+	}
+
+	@Override
+	public void delete(String pathname) throws IOException {
+		File file = new File(pathname);
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Failed to delete file: " + pathname);
+		}
+	}
+
+	@Override
+	public void createDirs(String path) throws IOException {
+		FileUtils.forceMkdir(new File(path));
+	}
+
+	@Override
+	public void copy(File source, String destPath) throws IOException {
+		FileUtils.copyFileToDirectory(source, new File(destPath));
+	}
+
+	@Override
+	public void close() {}
+}
@@ -21,8 +21,6 @@ public class GsonGen {
 	private GsonBuilder builder;
 	private Gson gson;
 	private String indent = "  ";
-	private JsonWriter jwriter;
-	private StringWriter writer;
 
 	public GsonGen() {
 		super();
@@ -56,11 +54,14 @@ public class GsonGen {
 
 	public void create() {
 		this.gson = builder.create();
-		if (this.jwriter == null) createJsonWriter();
 	}
 
 	public String toJson(Object src) {
 		if (gson == null) create();
+		// a fresh writer for each call; output does not accumulate across calls
+		StringWriter writer = new StringWriter();
+		JsonWriter jwriter = new JsonWriter(writer);
+		jwriter.setIndent(indent);
 		gson.toJson(src, src.getClass(), jwriter);
 		return writer.toString();
 	}
@@ -90,15 +91,6 @@ public class GsonGen {
 
 	public void setIndent(String indent) {
 		this.indent = indent;
-		createJsonWriter();
-		this.jwriter.setIndent(indent);
-	}
-
-	private void createJsonWriter() {
-		if (this.jwriter == null) {
-			this.writer = new StringWriter();
-			this.jwriter = new JsonWriter(writer);
-		}
 	}
 
 	// ------------------------------------------------------------------------------
@@ -0,0 +1,46 @@
+package net.certiv.antlr.project.base;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output staged in memory, for sinks that themselves hold their content in memory. On commit, the
+ * output is compared to the file and written through the sink where different.
+ */
+class HeldOutput implements OutputSink.Staged {
+
+	private final OutputSink sink;
+	private final String pathname;
+	private ByteArrayOutputStream held = new ByteArrayOutputStream();
+
+	HeldOutput(OutputSink sink, String pathname) {
+		super();
+		this.sink = sink;
+		this.pathname = pathname;
+	}
+
+	@Override
+	public OutputStream stream() {
+		return held;
+	}
+
+	@Override
+	public boolean commit() throws IOException {
+		try {
+			byte[] content = held.toByteArray();
+			if (sink.matches(pathname, content)) return false;
+			try (OutputStream out = sink.open(pathname)) {
+				out.write(content);
+			}
+			return true;
+		} finally {
+			close();
+		}
+	}
+
+	@Override
+	public void close() {
+		held = null;
+	}
+}
@@ -0,0 +1,122 @@
+package net.certiv.antlr.project.base;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.DateFormat;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Json persistence of the rule set, settings, and the other marshal classes. A single Gson
+ * instance, configured as by {@link GsonGen#configBasicBuilder()}, is shared by all threads. Files
+ * are read through a streaming reader over a buffered file channel, and are written through a
+ * streaming writer to a temporary file that then atomically replaces the target. The json text is
+ * never held in memory as a whole.
+ */
+public final class JsonStore {
+
+	private static final String prettyIndent = "    ";
+	private static final String compactIndent = "  ";
+	private static final int bufferSize = 64 * 1024;
+
+	// persisted files keep the platform encoding they have always been written in
+	private static final Charset charset = Charset.defaultCharset();
+
+	private static final Gson gson = new GsonBuilder().enableComplexMapKeySerialization()
+			.disableHtmlEscaping()
+			.serializeNulls()
+			.setDateFormat(DateFormat.LONG)
+			.setFieldNamingPolicy(FieldNamingPolicy.IDENTITY)
+			.setVersion(1.0)
+			.create();
+
+	private JsonStore() {}
+
+	/** Returns the shared Gson instance */
+	public static Gson gson() {
+		return gson;
+	}
+
+	/**
+	 * Reads a json file into a new instance of the given class. The content is read leniently, and
+	 * must be a single, non-empty json value.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read or is empty
+	 * @throws JsonSyntaxException
+	 *             if the content is not valid for the class
+	 */
+	public static <T> T read(File file, Class<T> form) throws IOException, JsonSyntaxException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				Reader in = Channels.newReader(channel, charset.newDecoder(), bufferSize);
+				JsonReader reader = new JsonReader(in)) {
+			T value;
+			try {
+				value = gson.fromJson(reader, form);
+			} catch (JsonIOException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+			if (value == null) throw new IOException("Empty json file: " + file.getPath());
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new JsonSyntaxException("Json document was not fully consumed: " + file.getPath());
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Writes the given object to a json file. The output is first written in full to a temporary
+	 * file in the same directory. Where the target already holds identical content, it is left
+	 * untouched; otherwise, the temporary file is moved over the target, atomically where the file
+	 * system supports it.
+	 *
+	 * @param compact
+	 *            true to indent by two spaces rather than four
+	 * @return true if the target was written; false if it was already identical
+	 * @throws IOException
+	 */
+	public static boolean write(File file, Object obj, boolean compact) throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		FileUtils.forceMkdir(dir);
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp),
+					charset), bufferSize))) {
+				writer.setIndent(compact ? compactIndent : prettyIndent);
+				gson.toJson(obj, obj.getClass(), writer);
+			} catch (JsonIOException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+			if (file.isFile() && FileUtils.contentEquals(tmp, file)) return false;
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package net.certiv.antlr.project.base;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Holds generated files in memory, keyed by normalized pathname. Nothing is written to disk;
+ * intended for inspecting the output of a generation run.
+ */
+public class MemorySink implements OutputSink {
+
+	private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+	private final Set<String> dirs = ConcurrentHashMap.newKeySet();
+
+	/** Returns the content of the named file; null if not present */
+	public byte[] getContent(String pathname) {
+		return files.get(key(pathname));
+	}
+
+	/** Returns a sorted snapshot of the files held: pathname => content */
+	public Map<String, byte[]> getFiles() {
+		return new TreeMap<>(files);
+	}
+
+	/** Returns the directories created */
+	public Set<String> getDirs() {
+		return new TreeSet<>(dirs);
+	}
+
+	@Override
+	public boolean isFile(String pathname) {
+		return files.containsKey(key(pathname));
+	}
+
+	@Override
+	public boolean matches(String pathname, byte[] content) {
+		return Arrays.equals(files.get(key(pathname)), content);
+	}
+
+	@Override
+	public byte[] read(String pathname) {
+		return files.get(key(pathname));
+	}
+
+	@Override
+	public OutputStream open(final String pathname) {
+		return new ByteArrayOutputStream() {
+
+			@Override
+			public void close() {
+				files.put(key(pathname), toByteArray());
+			}
+		};
+	}
+
+	@Override
+	public Staged stage(String pathname) {
+		return new HeldOutput(this, pathname);
+	}
+
+	@Override
+	public void delete(String pathname) {
+		files.remove(key(pathname));
+	}
+
+	@Override
+	public void createDirs(String path) {
+		dirs.add(key(path));
+	}
+
+	@Override
+	public void copy(File source, String destPath) throws IOException {
+		files.put(key(new File(destPath, source.getName()).getPath()), Files.readAllBytes(source.toPath()));
+	}
+
+	@Override
+	public void close() {}
+
+	private String key(String pathname) {
+		return FilenameUtils.normalizeNoEndSeparator(new File(pathname).getAbsolutePath(), true);
+	}
+}
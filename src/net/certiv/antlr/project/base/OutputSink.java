@@ -0,0 +1,70 @@
+package net.certiv.antlr.project.base;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Destination for generated project files. Pathnames are given as file system pathnames within the
+ * generated project; a sink may store them elsewhere, e.g., as entries of an archive. Sinks are used
+ * concurrently by parallel renders.
+ */
+public interface OutputSink extends Closeable {
+
+	/** Returns true if the named file exists in the sink */
+	boolean isFile(String pathname) throws IOException;
+
+	/** Returns true if the named file exists and holds exactly the given content */
+	boolean matches(String pathname, byte[] content) throws IOException;
+
+	/** Returns the content of the named file; null if it does not exist */
+	byte[] read(String pathname) throws IOException;
+
+	/**
+	 * Opens the named file for writing, replacing any existing content. Missing parent directories
+	 * are created.
+	 */
+	OutputStream open(String pathname) throws IOException;
+
+	/**
+	 * Opens output to replace the named file. The output is staged apart from the file, which is
+	 * unaffected until the output is committed.
+	 */
+	Staged stage(String pathname) throws IOException;
+
+	/** Deletes the named file, if it exists */
+	void delete(String pathname) throws IOException;
+
+	/** Creates the given directory, including any missing parent directories */
+	void createDirs(String path) throws IOException;
+
+	/** Copies the given local file into the given directory */
+	void copy(File source, String destPath) throws IOException;
+
+	/**
+	 * Completes any pending output. The sink remains usable; later output begins a new session on
+	 * the same destination.
+	 */
+	@Override
+	void close() throws IOException;
+
+	/** Output staged to replace a file of the sink */
+	interface Staged extends Closeable {
+
+		/** Returns the stream receiving the staged output */
+		OutputStream stream();
+
+		/**
+		 * Completes the output and puts it in place of the file, unless the file already holds
+		 * identical content. The staged output is released either way.
+		 * 
+		 * @return true if the file was replaced; false if it was left unchanged
+		 */
+		boolean commit() throws IOException;
+
+		/** Abandons any output not committed */
+		@Override
+		void close() throws IOException;
+	}
+}
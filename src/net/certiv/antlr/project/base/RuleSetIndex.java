@@ -0,0 +1,265 @@
+package net.certiv.antlr.project.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.certiv.antlr.project.regen.spec.RuleSet;
+import net.certiv.antlr.project.regen.spec.Unit;
+
+/**
+ * Indexed view of the units of a rule set. Units are indexed by type, template group, model
+ * package, and primary flag, and the parts and variables named by units are indexed back to the
+ * naming units. Within each index, units keep their rule set order.
+ * <p>
+ * The index is built once, when the rule set is loaded. Units added, removed, or changed in place
+ * afterwards must be reported through {@link #put}, {@link #remove}, or {@link #update}. A unit
+ * re-indexed under an existing name keeps its place in the order; a unit added under a new name
+ * follows all others, as in the rule set. All returned collections are unmodifiable views of the
+ * index.
+ */
+public class RuleSetIndex {
+
+	private final Map<TypeOf, Map<String, Unit>> byType = new EnumMap<>(TypeOf.class);
+	private final Map<TypeOf, Map<String, Unit>> primaryByType = new EnumMap<>(TypeOf.class);
+	private final Map<String, Map<String, Unit>> byGroup = new HashMap<>();
+	private final Map<String, Map<String, Unit>> byPackage = new HashMap<>();
+	private final Map<String, Unit> primary = new LinkedHashMap<>();
+	private final Map<String, Set<String>> byPart = new HashMap<>();
+	private final Map<String, Set<String>> byVariable = new HashMap<>();
+
+	// the keys each unit was last indexed under
+	private final Map<String, Keys> indexed = new HashMap<>();
+
+	// the rule set position of each unit name, retained while the unit is re-indexed
+	private final Map<String, Integer> order = new HashMap<>();
+	private int nextOrder;
+
+	private final Comparator<String> byOrder = new Comparator<String>() {
+
+		@Override
+		public int compare(String a, String b) {
+			return order.get(a).compareTo(order.get(b));
+		}
+	};
+
+	private static class Keys {
+
+		Unit unit;
+		TypeOf type;
+		String group;
+		String pkg;
+		boolean primary;
+		String[] parts;
+		String[] vars;
+	}
+
+	public RuleSetIndex(RuleSet rules) {
+		super();
+		if (rules.units == null) return;
+		for (Map.Entry<String, Unit> entry : rules.units.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/** Indexes the unit of the given name, replacing any unit previously indexed under that name */
+	public void put(String name, Unit unit) {
+		if (unit == null) {
+			remove(name);
+			return;
+		}
+		unindex(name);
+		// a unit new to the index is last in order; a re-indexed unit is put back in its place
+		boolean reorder = order.containsKey(name);
+		if (!reorder) order.put(name, nextOrder++);
+
+		Keys keys = new Keys();
+		keys.unit = unit;
+		keys.type = unit.unitType;
+		keys.group = unit.templateGroup;
+		keys.pkg = unit.modelPackage;
+		keys.primary = unit.primary;
+		keys.parts = toArray(unit.parts);
+		keys.vars = toArray(unit.templateVars);
+		indexed.put(name, keys);
+
+		if (keys.type != null) {
+			add(byType, keys.type, name, unit, reorder);
+			if (keys.primary) add(primaryByType, keys.type, name, unit, reorder);
+		}
+		if (keys.group != null) add(byGroup, keys.group, name, unit, reorder);
+		if (keys.pkg != null) add(byPackage, keys.pkg, name, unit, reorder);
+		if (keys.primary) {
+			primary.put(name, unit);
+			if (reorder) reorder(primary);
+		}
+		for (String part : keys.parts) {
+			link(byPart, part, name, reorder);
+		}
+		for (String var : keys.vars) {
+			link(byVariable, var, name, reorder);
+		}
+	}
+
+	/**
+	 * Re-indexes the unit of the given name after its indexed fields were changed in place. The
+	 * unit keeps its place in the order.
+	 */
+	public void update(String name) {
+		Keys keys = indexed.get(name);
+		if (keys != null) put(name, keys.unit);
+	}
+
+	/** Drops the unit of the given name from the index */
+	public void remove(String name) {
+		unindex(name);
+		order.remove(name);
+	}
+
+	private void unindex(String name) {
+		Keys keys = indexed.remove(name);
+		if (keys == null) return;
+
+		if (keys.type != null) {
+			drop(byType, keys.type, name);
+			drop(primaryByType, keys.type, name);
+		}
+		if (keys.group != null) drop(byGroup, keys.group, name);
+		if (keys.pkg != null) drop(byPackage, keys.pkg, name);
+		primary.remove(name);
+		for (String part : keys.parts) {
+			unlink(byPart, part, name);
+		}
+		for (String var : keys.vars) {
+			unlink(byVariable, var, name);
+		}
+	}
+
+	// ==========================================================================================================
+
+	/** Returns the units of the given type */
+	public Map<String, Unit> units(TypeOf type) {
+		return view(byType.get(type));
+	}
+
+	/** Returns the primary units of the given type */
+	public Map<String, Unit> primaryUnits(TypeOf type) {
+		return view(primaryByType.get(type));
+	}
+
+	/** Returns the primary units */
+	public Map<String, Unit> primaryUnits() {
+		return Collections.unmodifiableMap(primary);
+	}
+
+	/** Returns the units appended to the given template group */
+	public Map<String, Unit> unitsInGroup(String group) {
+		return view(byGroup.get(group));
+	}
+
+	/** Returns the units of the given model package */
+	public Map<String, Unit> unitsInPackage(String pkg) {
+		return view(byPackage.get(pkg));
+	}
+
+	/** Returns the names of the units that list the given unit name as a part */
+	public Set<String> unitsWithPart(String part) {
+		return names(byPart.get(part));
+	}
+
+	/** Returns the names of the units that list the given variable */
+	public Set<String> unitsWithVariable(String var) {
+		return names(byVariable.get(var));
+	}
+
+	/** Returns the template group names referenced by the units */
+	public Set<String> groupNames() {
+		return Collections.unmodifiableSet(byGroup.keySet());
+	}
+
+	/** Returns the part names referenced by the units */
+	public Set<String> partNames() {
+		return Collections.unmodifiableSet(byPart.keySet());
+	}
+
+	/** Returns the variable names referenced by the units */
+	public Set<String> variableNames() {
+		return Collections.unmodifiableSet(byVariable.keySet());
+	}
+
+	// ==========================================================================================================
+
+	private <K> void add(Map<K, Map<String, Unit>> index, K key, String name, Unit unit, boolean reorder) {
+		Map<String, Unit> units = index.get(key);
+		if (units == null) {
+			units = new LinkedHashMap<>();
+			index.put(key, units);
+		}
+		units.put(name, unit);
+		if (reorder) reorder(units);
+	}
+
+	private static <K> void drop(Map<K, Map<String, Unit>> index, K key, String name) {
+		Map<String, Unit> units = index.get(key);
+		if (units == null) return;
+		units.remove(name);
+		if (units.isEmpty()) index.remove(key);
+	}
+
+	private void link(Map<String, Set<String>> index, String key, String name, boolean reorder) {
+		Set<String> names = index.get(key);
+		if (names == null) {
+			names = new LinkedHashSet<>();
+			index.put(key, names);
+		}
+		names.add(name);
+		if (reorder) reorder(names);
+	}
+
+	private static void unlink(Map<String, Set<String>> index, String key, String name) {
+		Set<String> names = index.get(key);
+		if (names == null) return;
+		names.remove(name);
+		if (names.isEmpty()) index.remove(key);
+	}
+
+	// restores the order of units where a re-indexed unit was appended
+	private void reorder(Map<String, Unit> units) {
+		List<String> names = new ArrayList<>(units.keySet());
+		Collections.sort(names, byOrder);
+		Map<String, Unit> prior = new HashMap<>(units);
+		units.clear();
+		for (String name : names) {
+			units.put(name, prior.get(name));
+		}
+	}
+
+	private void reorder(Set<String> names) {
+		List<String> sorted = new ArrayList<>(names);
+		Collections.sort(sorted, byOrder);
+		names.clear();
+		names.addAll(sorted);
+	}
+
+	private static Map<String, Unit> view(Map<String, Unit> units) {
+		if (units == null) return Collections.emptyMap();
+		return Collections.unmodifiableMap(units);
+	}
+
+	private static Set<String> names(Set<String> names) {
+		if (names == null) return Collections.emptySet();
+		return Collections.unmodifiableSet(names);
+	}
+
+	private static String[] toArray(List<String> values) {
+		if (values == null) return new String[0];
+		return values.toArray(new String[values.size()]);
+	}
+}
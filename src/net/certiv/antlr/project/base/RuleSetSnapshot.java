@@ -0,0 +1,318 @@
+package net.certiv.antlr.project.base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.certiv.antlr.project.regen.spec.RuleSet;
+import net.certiv.antlr.project.regen.spec.Template;
+import net.certiv.antlr.project.regen.spec.Unit;
+import net.certiv.antlr.project.regen.spec.Variable;
+
+/**
+ * Binary snapshot of a loaded rule set, kept next to the rule set json file. The snapshot records
+ * the SHA-1 hash of the json content it was made from, and is used only while that hash still
+ * matches; the json file remains the source of truth. Fields are written and read by hand, in
+ * declaration order, so the format must be bumped whenever a persisted field of the spec classes
+ * changes.
+ */
+public final class RuleSetSnapshot {
+
+	public static final String snapshotExt = ".snapshot";
+
+	private static final int magic = 0x52475331; // "RGS1"
+	private static final int format = 1;
+	private static final int bufferSize = 64 * 1024;
+
+	private RuleSetSnapshot() {}
+
+	/** Returns the snapshot file of the given rule set json file */
+	public static File snapshotFile(File json) {
+		return new File(json.getPath() + snapshotExt);
+	}
+
+	/**
+	 * Reads the snapshot of a rule set.
+	 *
+	 * @param hash
+	 *            the hash of the current rule set json content
+	 * @return the rule set; null if there is no snapshot, or the snapshot is stale or of another
+	 *         format
+	 * @throws IOException
+	 *             if the snapshot is unreadable or truncated
+	 */
+	public static RuleSet read(File snapshot, String hash) throws IOException {
+		if (!snapshot.isFile()) return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot),
+				bufferSize))) {
+			if (in.readInt() != magic || in.readInt() != format) return null;
+			if (!hash.equals(readString(in))) return null;
+			RuleSet rules = readRuleSet(in);
+			if (in.read() != -1) throw new IOException("Trailing content in snapshot: " + snapshot.getPath());
+			return rules;
+		} catch (EOFException e) {
+			throw new IOException("Truncated snapshot: " + snapshot.getPath(), e);
+		}
+	}
+
+	/**
+	 * Writes the snapshot of a rule set. The snapshot is first written to a temporary file in the
+	 * same directory, then moved over the target.
+	 *
+	 * @param hash
+	 *            the hash of the rule set json content the rule set was loaded from
+	 * @throws IOException
+	 */
+	public static void write(File snapshot, String hash, RuleSet rules) throws IOException {
+		File dir = snapshot.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(snapshot.getName(), ".tmp", dir);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp),
+					bufferSize))) {
+				out.writeInt(magic);
+				out.writeInt(format);
+				writeString(out, hash);
+				writeRuleSet(out, rules);
+			}
+			try {
+				Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+
+	// ==========================================================================================================
+
+	private static void writeRuleSet(DataOutputStream out, RuleSet rules) throws IOException {
+		writeString(out, rules.magicId);
+		writeString(out, rules.projectBasePath);
+		writeString(out, rules.projectRoot);
+		writeString(out, rules.templatePackage);
+		writeString(out, rules.modelGrammar);
+		writeString(out, rules.modelBasePath);
+		writeString(out, rules.modelBasePackage);
+		writeStrings(out, rules.excludePackages);
+		writeStrings(out, rules.checkedTypes);
+		writeStrings(out, rules.rootTypes);
+		writeStrings(out, rules.rootDirs);
+
+		if (writeSize(out, rules.units)) {
+			for (Map.Entry<String, Unit> entry : rules.units.entrySet()) {
+				writeString(out, entry.getKey());
+				writeUnit(out, entry.getValue());
+			}
+		}
+		if (writeSize(out, rules.variables)) {
+			for (Map.Entry<String, Variable> entry : rules.variables.entrySet()) {
+				writeString(out, entry.getKey());
+				writeVariable(out, entry.getValue());
+			}
+		}
+		if (writeSize(out, rules.templates)) {
+			for (Map.Entry<String, Template> entry : rules.templates.entrySet()) {
+				writeString(out, entry.getKey());
+				writeTemplate(out, entry.getValue());
+			}
+		}
+	}
+
+	private static RuleSet readRuleSet(DataInputStream in) throws IOException {
+		RuleSet rules = new RuleSet();
+		rules.magicId = readString(in);
+		rules.projectBasePath = readString(in);
+		rules.projectRoot = readString(in);
+		rules.templatePackage = readString(in);
+		rules.modelGrammar = readString(in);
+		rules.modelBasePath = readString(in);
+		rules.modelBasePackage = readString(in);
+		rules.excludePackages = readStrings(in);
+		rules.checkedTypes = readStrings(in);
+		rules.rootTypes = readStrings(in);
+		rules.rootDirs = readStrings(in);
+
+		int size = in.readInt();
+		if (size >= 0) {
+			rules.units = new LinkedHashMap<>();
+			for (int idx = 0; idx < size; idx++) {
+				rules.units.put(readString(in), readUnit(in));
+			}
+		}
+		size = in.readInt();
+		if (size >= 0) {
+			rules.variables = new LinkedHashMap<>();
+			for (int idx = 0; idx < size; idx++) {
+				rules.variables.put(readString(in), readVariable(in));
+			}
+		}
+		size = in.readInt();
+		if (size >= 0) {
+			rules.templates = new LinkedHashMap<>();
+			for (int idx = 0; idx < size; idx++) {
+				rules.templates.put(readString(in), readTemplate(in));
+			}
+		}
+		return rules;
+	}
+
+	private static void writeUnit(DataOutputStream out, Unit unit) throws IOException {
+		out.writeBoolean(unit != null);
+		if (unit == null) return;
+		writeString(out, unit.modelRoot);
+		writeString(out, unit.modelPackage);
+		writeString(out, unit.modelFilename);
+		writeString(out, unit.unitName);
+		out.writeBoolean(unit.primary);
+		writeString(out, unit.unitType != null ? unit.unitType.name() : null);
+		writeStrings(out, unit.templateVars);
+		writeStrings(out, unit.parts);
+		out.writeBoolean(unit.literal);
+		writeString(out, unit.license);
+		out.writeBoolean(unit.copyright);
+		out.writeBoolean(unit.contributor);
+		out.writeBoolean(unit.description);
+		out.writeBoolean(unit.version);
+		writeString(out, unit.templateGroup);
+	}
+
+	private static Unit readUnit(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) return null;
+		Unit unit = new Unit();
+		unit.modelRoot = readString(in);
+		unit.modelPackage = readString(in);
+		unit.modelFilename = readString(in);
+		unit.unitName = readString(in);
+		unit.primary = in.readBoolean();
+		unit.unitType = readEnum(in, TypeOf.class);
+		unit.templateVars = readStrings(in);
+		unit.parts = readStrings(in);
+		unit.literal = in.readBoolean();
+		unit.license = readString(in);
+		unit.copyright = in.readBoolean();
+		unit.contributor = in.readBoolean();
+		unit.description = in.readBoolean();
+		unit.version = in.readBoolean();
+		unit.templateGroup = readString(in);
+		return unit;
+	}
+
+	private static void writeVariable(DataOutputStream out, Variable var) throws IOException {
+		out.writeBoolean(var != null);
+		if (var == null) return;
+		writeString(out, var.variable);
+		writeString(out, var.vType != null ? var.vType.name() : null);
+		writeString(out, var.source);
+		writeString(out, var.select);
+		writeString(out, var.search);
+		writeString(out, var.replace);
+		writeString(out, var.marker);
+	}
+
+	private static Variable readVariable(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) return null;
+		Variable var = new Variable();
+		var.variable = readString(in);
+		var.vType = readEnum(in, VarType.class);
+		var.source = readString(in);
+		var.select = readString(in);
+		var.search = readString(in);
+		var.replace = readString(in);
+		var.marker = readString(in);
+		return var;
+	}
+
+	private static void writeTemplate(DataOutputStream out, Template tmpl) throws IOException {
+		out.writeBoolean(tmpl != null);
+		if (tmpl == null) return;
+		writeString(out, tmpl.name);
+		writeStrings(out, tmpl.imports);
+		writeString(out, tmpl.delimiter);
+		writeString(out, tmpl.divider);
+		writeString(out, tmpl.marker);
+	}
+
+	private static Template readTemplate(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) return null;
+		Template tmpl = new Template();
+		tmpl.name = readString(in);
+		tmpl.imports = readStrings(in);
+		tmpl.delimiter = readString(in);
+		tmpl.divider = readString(in);
+		tmpl.marker = readString(in);
+		return tmpl;
+	}
+
+	// ==========================================================================================================
+
+	// a null value is written as a negative length
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) return null;
+		byte[] bytes = new byte[len];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+		if (!writeSize(out, values)) return;
+		for (String value : values) {
+			writeString(out, value);
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size < 0) return null;
+		List<String> values = new ArrayList<>(size);
+		for (int idx = 0; idx < size; idx++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+
+	// writes the size of the collection, or -1 for null; returns true if there are entries to write
+	private static boolean writeSize(DataOutputStream out, Object coll) throws IOException {
+		int size = -1;
+		if (coll instanceof List) size = ((List<?>) coll).size();
+		if (coll instanceof Map) size = ((Map<?, ?>) coll).size();
+		out.writeInt(size);
+		return size > 0;
+	}
+
+	private static <E extends Enum<E>> E readEnum(DataInputStream in, Class<E> type) throws IOException {
+		String name = readString(in);
+		if (name == null) return null;
+		try {
+			return Enum.valueOf(type, name);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Unknown " + type.getSimpleName() + " in snapshot: " + name, e);
+		}
+	}
+}
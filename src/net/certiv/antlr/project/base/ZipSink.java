@@ -0,0 +1,123 @@
+package net.certiv.antlr.project.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes generated files as entries of a zip or jar archive, using the NIO zip file system. Entry
+ * names are the file pathnames relative to a root directory, typically the generated project
+ * directory. The archive is created if it does not exist, and is updated in place if it does; the
+ * archive file is written out when the sink is closed.
+ */
+public class ZipSink implements OutputSink {
+
+	private final Path archive;
+	private final Path root;
+	private FileSystem fs;
+
+	/**
+	 * @param archivePathname
+	 *            the system pathname of the archive
+	 * @param rootPath
+	 *            the directory corresponding to the root of the archive
+	 */
+	public ZipSink(String archivePathname, String rootPath) {
+		super();
+		this.archive = Paths.get(archivePathname).toAbsolutePath().normalize();
+		this.root = Paths.get(rootPath).toAbsolutePath().normalize();
+	}
+
+	public String getArchivePathname() {
+		return archive.toString();
+	}
+
+	@Override
+	public boolean isFile(String pathname) throws IOException {
+		return Files.isRegularFile(entry(pathname));
+	}
+
+	@Override
+	public boolean matches(String pathname, byte[] content) throws IOException {
+		Path entry = entry(pathname);
+		if (!Files.isRegularFile(entry) || Files.size(entry) != content.length) return false;
+		return Arrays.equals(Files.readAllBytes(entry), content);
+	}
+
+	@Override
+	public byte[] read(String pathname) throws IOException {
+		Path entry = entry(pathname);
+		if (!Files.isRegularFile(entry)) return null;
+		return Files.readAllBytes(entry);
+	}
+
+	@Override
+	public OutputStream open(String pathname) throws IOException {
+		Path entry = entry(pathname);
+		if (entry.getParent() != null) Files.createDirectories(entry.getParent());
+		return Files.newOutputStream(entry);
+	}
+
+	@Override
+	public Staged stage(String pathname) {
+		return new HeldOutput(this, pathname);
+	}
+
+	@Override
+	public void delete(String pathname) throws IOException {
+		Files.deleteIfExists(entry(pathname));
+	}
+
+	@Override
+	public void createDirs(String path) throws IOException {
+		Files.createDirectories(entry(path));
+	}
+
+	@Override
+	public void copy(File source, String destPath) throws IOException {
+		Path dir = entry(destPath);
+		Files.createDirectories(dir);
+		Files.copy(source.toPath(), dir.resolve(source.getName()), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (fs != null) {
+			try {
+				fs.close();
+			} finally {
+				fs = null;
+			}
+		}
+	}
+
+	// maps a file system pathname to the corresponding archive entry path
+	private Path entry(String pathname) throws IOException {
+		Path path = Paths.get(pathname).toAbsolutePath().normalize();
+		if (!path.startsWith(root)) {
+			throw new IOException("Not within the archive root " + root + ": " + pathname);
+		}
+		String name = root.relativize(path).toString().replace(File.separatorChar, '/');
+		return fs().getPath("/" + name);
+	}
+
+	private synchronized FileSystem fs() throws IOException {
+		if (fs == null) {
+			Files.createDirectories(archive.getParent());
+			Map<String, String> env = new HashMap<>();
+			env.put("create", "true");
+			fs = FileSystems.newFileSystem(URI.create("jar:" + archive.toUri()), env);
+		}
+		return fs;
+	}
+}
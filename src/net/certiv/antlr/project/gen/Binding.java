@@ -0,0 +1,104 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Pre-resolved accessor for a single template variable. The accessor methods are looked up once, at
+ * bind time, and are bound to the configuration instance; resolving a value at render time
+ * involves no reflection.
+ */
+public class Binding {
+
+	private static final MethodType plainType = MethodType.methodType(Object.class);
+	private static final MethodType contextType = MethodType.methodType(Object.class, String.class);
+
+	public final String name;			// template variable name
+	public final String methodName;		// name of the accessor method(s)
+
+	private final MethodHandle plain;	// no-arg accessor; null if none
+	private final MethodHandle context;	// context name arg accessor; null if none
+
+	private Binding(String name, String methodName, MethodHandle plain, MethodHandle context) {
+		super();
+		this.name = name;
+		this.methodName = methodName;
+		this.plain = plain;
+		this.context = context;
+	}
+
+	/**
+	 * Creates a binding of the named template variable to the accessor methods of the given name.
+	 *
+	 * @param target
+	 *            the object defining the accessor methods
+	 * @param name
+	 *            template variable name
+	 * @param methodName
+	 *            accessor method name
+	 * @return the binding
+	 * @throws IOException
+	 *             if no accessible accessor method of the given name exists
+	 */
+	public static Binding create(Object target, String name, String methodName) throws IOException {
+		MethodHandle plain = handle(target, methodName, plainType);
+		MethodHandle context = handle(target, methodName, contextType, String.class);
+		if (plain == null && context == null) {
+			throw new IOException("No accessor for variable: " + name + " ==> " + methodName);
+		}
+		return new Binding(name, methodName, plain, context);
+	}
+
+	/**
+	 * Creates a binding of the named template variable to the parser context name of the render
+	 * itself.
+	 *
+	 * @param name
+	 *            template variable name
+	 * @return the binding
+	 */
+	public static Binding contextName(String name) {
+		MethodHandle context = MethodHandles.identity(String.class).asType(contextType);
+		return new Binding(name, name, null, context);
+	}
+
+	private static MethodHandle handle(Object target, String methodName, MethodType type, Class<?>... params)
+			throws IOException {
+		Method method;
+		try {
+			method = target.getClass().getMethod(methodName, params);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+		try {
+			return MethodHandles.publicLookup().unreflect(method).bindTo(target).asType(type);
+		} catch (IllegalAccessException e) {
+			throw new IOException("Inaccessible accessor for variable: " + methodName, e);
+		}
+	}
+
+	/**
+	 * Returns the bound value. The no-arg accessor is tried first; if it does not exist or returns
+	 * null, the context name accessor is tried where a context name is given.
+	 *
+	 * @param contextName
+	 *            the current parser context name; may be null
+	 * @return the value or null
+	 * @throws IOException
+	 */
+	public Object valueOf(String contextName) throws IOException {
+		try {
+			Object value = null;
+			if (plain != null) value = (Object) plain.invokeExact();
+			if (value == null && context != null && contextName != null) {
+				value = (Object) context.invokeExact(contextName);
+			}
+			return value;
+		} catch (Throwable e) {
+			throw new IOException("Failed to resolve variable: " + name + " ==> " + methodName, e);
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package net.certiv.antlr.project.gen;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.certiv.antlr.project.base.CtxMethod;
+
+import org.atteo.evo.inflector.English;
+
+/**
+ * Extracts the parse tree context classes, and their public accessors, from the source of an
+ * Antlr generated parser. The source is scanned once, front to back, by a minimal Java tokenizer
+ * that skips comments and literals and tracks brace nesting, so the cost is linear in the size of
+ * the source.
+ * <p>
+ * Within each <code>public static class</code>, the public members of the form
+ * <code>public Type name</code>, <code>public Type&lt;Arg&gt; name</code>, and
+ * <code>public Type name()</code> are collected. Members returning <code>int</code>, static
+ * members, and methods taking arguments are skipped. The rule of each context is taken from the
+ * <code>RULE_</code> constant referenced in its body or, for the context of a labeled alternative,
+ * from the context it extends.
+ */
+public class ContextScanner {
+
+	private static final int EOF = -1;
+	private static final int IDENT = -2;
+	private static final String rulePrefix = "RULE_";
+
+	private final Map<String, List<CtxMethod>> ctxs;
+	private final Map<String, List<String>> importCtxs;
+	private final Map<String, String> ctxRules = new HashMap<>();
+
+	private CharSequence src;
+	private int len;
+	private int pos;
+
+	// current token
+	private int type;
+	private int beg;
+	private int end;
+
+	/**
+	 * Creates a scanner that adds the contexts found to the given maps.
+	 *
+	 * @param ctxs
+	 *            context name => context accessor methods
+	 * @param importCtxs
+	 *            context name => names of the contexts referenced by the context, including itself
+	 */
+	public ContextScanner(Map<String, List<CtxMethod>> ctxs, Map<String, List<String>> importCtxs) {
+		super();
+		this.ctxs = ctxs;
+		this.importCtxs = importCtxs;
+	}
+
+	public ContextScanner() {
+		this(new HashMap<String, List<CtxMethod>>(), new HashMap<String, List<String>>());
+	}
+
+	public Map<String, List<CtxMethod>> getContextMethods() {
+		return ctxs;
+	}
+
+	public Map<String, List<String>> getImportContexts() {
+		return importCtxs;
+	}
+
+	/** Returns the map of context name => parser rule name, for the contexts whose rule is known */
+	public Map<String, String> getContextRules() {
+		return ctxRules;
+	}
+
+	/**
+	 * Scans UTF-8 parser source held in a byte buffer, as read from, or mapped onto, the parser
+	 * file. ASCII content, the usual case for a generated parser, is read in place, one byte per
+	 * character; otherwise, the content is first decoded.
+	 */
+	public void scan(ByteBuffer buffer) {
+		if (isAscii(buffer)) {
+			scan(new ByteSequence(buffer));
+		} else {
+			scan(StandardCharsets.UTF_8.decode(buffer.duplicate()));
+		}
+	}
+
+	private static boolean isAscii(ByteBuffer buffer) {
+		for (int idx = buffer.position(); idx < buffer.limit(); idx++) {
+			if (buffer.get(idx) < 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Scans the given parser source.
+	 */
+	public void scan(CharSequence source) {
+		src = source;
+		len = source.length();
+		pos = 0;
+		while (next() != EOF) {
+			if (isIdent("public")) {
+				int mark = pos;
+				if (next() == IDENT && isIdent("static") && next() == IDENT && isIdent("class") && next() == IDENT) {
+					String name = text();
+					String parent = null;
+					// advance to the opening brace of the class body, noting any superclass
+					while (next() != EOF && type != '{') {
+						if (isIdent("extends") && next() == IDENT) parent = text();
+					}
+					if (type == EOF) break;
+					scanClassBody(name, parent);
+				} else {
+					pos = mark;
+				}
+			}
+		}
+		src = null;
+	}
+
+	private void scanClassBody(String className, String parent) {
+		List<CtxMethod> members = new ArrayList<>();
+		String rule = null;
+		int depth = 1;
+		while (depth > 0 && next() != EOF) {
+			if (rule == null && isRuleConstant()) {
+				rule = src.subSequence(beg + rulePrefix.length(), end).toString();
+			} else if (type == '{') {
+				depth++;
+			} else if (type == '}') {
+				depth--;
+			} else if (depth == 1 && isIdent("public")) {
+				int mark = pos;
+				CtxMethod ms = scanMember();
+				if (ms == null) {
+					pos = mark;
+				} else {
+					members.add(ms);
+				}
+			}
+		}
+		if (rule == null && parent != null) rule = ctxRules.get(parent.replace("Context", ""));
+		define(className, members, rule);
+	}
+
+	/**
+	 * Adds a context class given its public members, in declaration order. Unwanted members are
+	 * dropped; the remainder are completed and recorded as the context accessor methods.
+	 *
+	 * @param className
+	 *            the context class name
+	 * @param members
+	 *            partially filled members: return class, list type argument if any, name, and, for
+	 *            methods, the parenthesized parameter list
+	 * @param ruleName
+	 *            the name of the parser rule of the context; null if unknown
+	 */
+	void define(String className, List<CtxMethod> members, String ruleName) {
+		String ctxName = className.replace("Context", "");
+		List<CtxMethod> methods = new ArrayList<>();
+		List<String> imports = new ArrayList<>();
+
+		// import statements will always include self
+		imports.add(ctxName);
+
+		for (CtxMethod ms : members) {
+			if (accept(ms)) {
+				process(ms, imports);
+				methods.add(ms);
+			}
+		}
+		ctxs.put(ctxName, methods);
+		importCtxs.put(ctxName, imports);
+		if (ruleName != null) ctxRules.put(ctxName, ruleName);
+	}
+
+	/*
+	 * Scans a member declaration following 'public'. Returns null if the declaration does not have a
+	 * recognized form.
+	 */
+	private CtxMethod scanMember() {
+		if (next() != IDENT) return null;
+		CtxMethod ms = new CtxMethod();
+		ms.retClass = text();
+
+		next();
+		if (type == '<') {
+			if (next() != IDENT) return null;
+			String arg = text();
+			if (next() != '>') return null;
+			ms.retType = "<" + arg + ">";
+			next();
+		}
+		if (type != IDENT) return null;
+		ms.callName = text();
+
+		int mark = pos;
+		if (next() == '(') {
+			int open = end;
+			while (next() != EOF && type != ')') {}
+			if (type == EOF) return null;
+			ms.callType = "(" + src.subSequence(open, beg).toString() + ")";
+		} else {
+			pos = mark;
+		}
+		return ms;
+	}
+
+	// skip unwanted cases
+	private boolean accept(CtxMethod ms) {
+		if (ms.retClass.equals("int")) return false;
+		if (ms.retClass.equals("static")) return false;
+		if (ms.callType != null && ms.callType.length() > 2) return false;
+		return true;
+	}
+
+	private void process(CtxMethod ms, List<String> imports) {
+		ms.presName = ms.callName;
+		if (ms.callType == null) ms.callType = "";
+		if (ms.retType != null) {
+			ms.list = true;
+			ms.retClass += ms.retType;
+			ms.retType = ms.retType.substring(1, ms.retType.length() - 1);
+			ms.presName = English.plural(ms.presName);
+
+			if (ms.retType.endsWith("Context")) {
+				ms.contextName = ms.retType.substring(0, ms.retType.lastIndexOf("Context"));
+				if (!imports.contains(ms.contextName)) {
+					imports.add(ms.contextName);
+				}
+			}
+		} else {
+			if (ms.retClass.endsWith("Context")) {
+				ms.contextName = ms.retClass.substring(0, ms.retClass.lastIndexOf("Context"));
+				if (!imports.contains(ms.contextName)) {
+					imports.add(ms.contextName);
+				}
+			}
+		}
+	}
+
+	// ///////////////////////////////////////////////////////////////////////////
+	// Tokenizer
+
+	private boolean isIdent(String word) {
+		if (type != IDENT || end - beg != word.length()) return false;
+		for (int idx = 0; idx < word.length(); idx++) {
+			if (src.charAt(beg + idx) != word.charAt(idx)) return false;
+		}
+		return true;
+	}
+
+	private boolean isRuleConstant() {
+		if (type != IDENT || end - beg <= rulePrefix.length()) return false;
+		for (int idx = 0; idx < rulePrefix.length(); idx++) {
+			if (src.charAt(beg + idx) != rulePrefix.charAt(idx)) return false;
+		}
+		return true;
+	}
+
+	private String text() {
+		return src.subSequence(beg, end).toString();
+	}
+
+	/*
+	 * Advances to the next token, skipping whitespace, comments, and string and character literals.
+	 * Returns the token type: IDENT, EOF, or the punctuation character itself.
+	 */
+	private int next() {
+		while (pos < len) {
+			char c = src.charAt(pos);
+			if (Character.isWhitespace(c)) {
+				pos++;
+			} else if (c == '/' && pos + 1 < len && src.charAt(pos + 1) == '/') {
+				pos += 2;
+				while (pos < len && src.charAt(pos) != '\n') pos++;
+			} else if (c == '/' && pos + 1 < len && src.charAt(pos + 1) == '*') {
+				pos += 2;
+				while (pos < len && !(src.charAt(pos) == '*' && pos + 1 < len && src.charAt(pos + 1) == '/')) pos++;
+				pos += 2;
+			} else if (c == '"' || c == '\'') {
+				pos++;
+				while (pos < len && src.charAt(pos) != c) {
+					if (src.charAt(pos) == '\\') pos++;
+					pos++;
+				}
+				pos++;
+			} else if (Character.isJavaIdentifierStart(c)) {
+				beg = pos;
+				while (pos < len && Character.isJavaIdentifierPart(src.charAt(pos))) pos++;
+				end = pos;
+				return type = IDENT;
+			} else {
+				beg = pos;
+				end = ++pos;
+				return type = c;
+			}
+		}
+		beg = end = pos = len;
+		return type = EOF;
+	}
+
+	/** Read-only character view of a byte buffer, one byte per character */
+	private static class ByteSequence implements CharSequence {
+
+		private final ByteBuffer buffer;
+		private final int offset;
+		private final int length;
+
+		ByteSequence(ByteBuffer buffer) {
+			this(buffer, buffer.position(), buffer.remaining());
+		}
+
+		private ByteSequence(ByteBuffer buffer, int offset, int length) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer.get(offset + index) & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new ByteSequence(buffer, offset + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			char[] chars = new char[length];
+			for (int idx = 0; idx < length; idx++) {
+				chars[idx] = charAt(idx);
+			}
+			return new String(chars);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.certiv.antlr.project.base.ConfigBase;
+import net.certiv.antlr.project.base.OutputSink;
+import net.certiv.antlr.project.base.ZipSink;
+import net.certiv.antlr.project.gen.spec.Batch;
+import net.certiv.antlr.project.gen.spec.Settings;
+import net.certiv.antlr.project.regen.spec.RuleSet;
+import net.certiv.antlr.project.util.Log;
+
+import org.apache.commons.io.FilenameUtils;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Generates each of the projects listed in a batch manifest within a single JVM. The rule set is
+ * loaded once and shared, read-only, by all projects; compiled templates and the template variable
+ * alias tables are likewise shared. Independent projects are generated in parallel.
+ * <p>
+ * The identity and location of each project are taken from its settings alone; the corresponding
+ * command line options are rejected. Tool paths given on the command line apply to every project.
+ */
+public class GenBatch {
+
+	static final String magicIdBatch = "GenBatch451";
+
+	private String cwd;
+	private GenOptions opts;
+
+	public GenBatch(String cwd, GenOptions opts) {
+		super();
+		this.cwd = cwd;
+		this.opts = opts;
+	}
+
+	/**
+	 * Generates all projects of the batch manifest named on the command line.
+	 *
+	 * @return true if every project was generated
+	 */
+	public boolean run() {
+		if (!checkProjectArgs()) return false;
+
+		ConfigBase base = new ConfigBase();
+		base.setSnapshot(opts.flagSnapshot());
+		String pathname = opts.valBatchPathname();
+		Batch batch;
+		try {
+			batch = (Batch) base.readJsonFile(pathname, Batch.class);
+			if (!magicIdBatch.equals(batch.magicId)) {
+				throw new IOException("Wrong magicId - not a valid batch file: " + pathname);
+			}
+		} catch (IOException | JsonSyntaxException e) {
+			Log.error(this, "Failed to load batch manifest " + pathname + ": " + e.getMessage());
+			return false;
+		}
+		if (batch.projects == null || batch.projects.isEmpty()) {
+			Log.warn(this, "No projects listed in batch manifest " + pathname);
+			return true;
+		}
+
+		String rulesPathname = batch.rulesPathname != null ? batch.rulesPathname : opts.valRuleSetPathname();
+		rulesPathname = FilenameUtils.normalize(rulesPathname);
+		GenProfile.Span span = GenProfile.begin("ruleSet.load");
+		boolean loaded = rulesPathname != null && base.loadRuleSet(rulesPathname);
+		GenProfile.end(span);
+		if (!loaded) {
+			Log.error(this, "Failed to load the batch rule set: " + rulesPathname);
+			return false;
+		}
+
+		// all projects share one archive, rooted at their common parent directory
+		ZipSink sink = null;
+		if (opts.valArchivePathname() != null) {
+			sink = new ZipSink(opts.valArchivePathname(), commonPath(batch.projects));
+		}
+
+		long beg = System.nanoTime();
+		int threads = Math.min(batch.projects.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		List<Future<Result>> futures = new ArrayList<>();
+		for (Settings settings : batch.projects) {
+			futures.add(exec.submit(new Task(settings, base.getRuleSet(), rulesPathname, sink)));
+		}
+		exec.shutdown();
+
+		List<Result> results = new ArrayList<>();
+		for (int idx = 0; idx < futures.size(); idx++) {
+			try {
+				results.add(futures.get(idx).get());
+			} catch (InterruptedException | ExecutionException e) {
+				Settings settings = batch.projects.get(idx);
+				Log.error(this, "Project generation failed: " + settings.grammarName, e);
+				results.add(new Result(settings, false, 0));
+			}
+		}
+
+		boolean ok = true;
+		if (sink != null) {
+			try {
+				sink.close();
+			} catch (IOException e) {
+				Log.error(this, "Failed to complete output to " + sink.getArchivePathname(), e);
+				ok = false;
+			}
+		}
+		Log.info(this, "Batch generation of " + results.size() + " projects on " + threads + " threads:");
+		for (Result result : results) {
+			Log.info(this, result.toString());
+			ok &= result.ok;
+		}
+		long ms = (System.nanoTime() - beg) / 1000000;
+		Log.info(this, "Batch generation " + (ok ? "completed" : "had failures") + " in " + ms + "ms");
+		Log.info(this, TemplateCache.report());
+		GenProfile.report(base, FilenameUtils.removeExtension(pathname) + "Profile.json", "batch");
+		return ok;
+	}
+
+	// a project option would otherwise be applied to, and so rename or relocate, every project
+	private boolean checkProjectArgs() {
+		List<String> given = new ArrayList<>();
+		if (opts.valGrammarName() != null) given.add("-g");
+		if (opts.valPackageName() != null) given.add("-n");
+		if (opts.valProjectPath() != null) given.add("-p");
+		if (opts.valSourcePath() != null) given.add("-s");
+		if (opts.valTestPath() != null) given.add("-t");
+		if (given.isEmpty()) return true;
+		Log.error(this, "Options " + given + " name a single project; give them per project in the batch manifest");
+		return false;
+	}
+
+	// mirrors the single project flow of GenProject
+	private boolean generate(Settings settings, RuleSet rules, String rulesPathname, OutputSink sink) {
+		GenConfig config = new GenConfig(cwd, opts, settings);
+		config.setSink(sink);
+		try {
+			config.updateSettingsFromArgs();
+			config.setRuleSetPathname(rulesPathname);
+			config.setRuleSet(rules);
+			if (!config.checkSettings()) {
+				Log.error(this, "Insufficient settings for project " + settings.grammarName);
+				return false;
+			}
+			config.save();
+		} catch (IOException e) {
+			Log.error(this, "Failed to configure project " + settings.grammarName, e);
+			return false;
+		}
+
+		Productions funcs = new Productions(opts, config);
+		if (!funcs.generatedParserExists() && opts.flagDescriptors()) return false;
+		return funcs.generateProject();
+	}
+
+	// the deepest directory containing all of the project directories
+	private String commonPath(List<Settings> projects) {
+		Path common = null;
+		for (Settings settings : projects) {
+			Path path = Paths.get(settings.projectPath).toAbsolutePath().normalize();
+			if (common == null) {
+				common = path;
+			} else {
+				while (!path.startsWith(common)) {
+					common = common.getParent();
+				}
+			}
+		}
+		return common.toString();
+	}
+
+	private class Task implements Callable<Result> {
+
+		private final Settings settings;
+		private final RuleSet rules;
+		private final String rulesPathname;
+		private final OutputSink sink;
+
+		Task(Settings settings, RuleSet rules, String rulesPathname, OutputSink sink) {
+			this.settings = settings;
+			this.rules = rules;
+			this.rulesPathname = rulesPathname;
+			this.sink = sink;
+		}
+
+		@Override
+		public Result call() {
+			long beg = System.nanoTime();
+			boolean ok = generate(settings, rules, rulesPathname, sink);
+			return new Result(settings, ok, (System.nanoTime() - beg) / 1000000);
+		}
+	}
+
+	private static class Result {
+
+		final Settings settings;
+		final boolean ok;
+		final long millis;
+
+		Result(Settings settings, boolean ok, long millis) {
+			this.settings = settings;
+			this.ok = ok;
+			this.millis = millis;
+		}
+
+		@Override
+		public String toString() {
+			return "  " + settings.grammarName + " [" + settings.projectPath + "] " + (ok ? "ok" : "FAILED") + " in "
+					+ millis + "ms";
+		}
+	}
+}
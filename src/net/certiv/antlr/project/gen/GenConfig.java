@@ -17,21 +17,27 @@ package net.certiv.antlr.project.gen;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import net.certiv.antlr.project.base.ConfigBase;
+import net.certiv.antlr.project.base.Context;
 import net.certiv.antlr.project.base.CtxMethod;
-import net.certiv.antlr.project.base.GsonGen;
+import net.certiv.antlr.project.base.TypeOf;
 import net.certiv.antlr.project.gen.spec.Settings;
+import net.certiv.antlr.project.regen.spec.RuleSet;
 import net.certiv.antlr.project.regen.spec.Unit;
 import net.certiv.antlr.project.util.Log;
 import net.certiv.antlr.project.util.Strings;
 import net.certiv.antlr.project.util.Utils;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
 import com.google.gson.JsonSyntaxException;
@@ -50,14 +56,20 @@ public class GenConfig extends ConfigBase {
 	private static final String ParserGenPath = "parser/gen";
 	private static final String parser = "Parser.java";
 
+	private static final String compactPrefix = "Compact";
+	private static final String compactSuffix = "Descriptors.java";
+	private static final String compactTemplate = "DescriptorTableClass";
+	private static final String[] compactVars = { "packageName", "grammarName", "contextTable" };
+
 	private String cwd;
 	private GenOptions opts;		// command-line options
 	private Settings settings;		// persisted values for customizing the gen production
 
 	// private List<String> contexts;
-	private String contextName;						// for generating decorator access methods
 	private Map<String, List<CtxMethod>> ctxs; 		// for generating decorator access methods
 	private Map<String, List<String>> importCtxs;	// for generating decorator import statements
+	private Map<String, String> ctxRules;			// for generating the compact descriptor table
+	private Unit compactTable;						// unit of the compact descriptor table, by rule set
 
 	public static final FilenameFilter jsonFilter = new FilenameFilter() {
 
@@ -72,12 +84,26 @@ public class GenConfig extends ConfigBase {
 		this.cwd = cwd;
 		this.opts = opts;
 		this.settings = new Settings();
+		setSnapshot(opts.flagSnapshot());
+	}
+
+	/**
+	 * Creates a configuration from the given settings, rather than from a persisted settings file.
+	 * Used for batch generation, where the settings of each project are given in the batch manifest.
+	 */
+	public GenConfig(String cwd, GenOptions opts, Settings settings) {
+		this(cwd, opts);
+		this.settings = settings;
+		this.settings.magicId = magicIdSettings;
+		this.settings.loaded = true;
 	}
 
 	public boolean load() {
 		try {
+			GenProfile.Span span = GenProfile.begin("settings.load");
 			loadPriorSettings();
 			updateSettingsFromArgs();
+			GenProfile.end(span);
 			save();
 		} catch (IOException e) {
 			Log.error(this, "Failed in initial configurations load", e);
@@ -104,15 +130,20 @@ public class GenConfig extends ConfigBase {
 		}
 		File f = new File(configDir);
 		if (f.exists() && f.isDirectory()) {
+			// only files identified by magicId are fully loaded
+			SettingsDiscovery discovery = new SettingsDiscovery(this, f, magicIdSettings);
 			File[] possibleConfigs = f.listFiles(jsonFilter);
 			for (File file : possibleConfigs) {
+				if (!discovery.matches(file)) continue;
 				String filename = file.getCanonicalPath();
 				Settings tmpModel = loadFile(filename, true);
 				if (tmpModel != null) {
 					settings = tmpModel;
+					if (!opts.flagPlan()) discovery.save();
 					return;
 				}
 			}
+			if (!opts.flagPlan()) discovery.save();
 		}
 		Log.warn(this, "Failed to find a configuration file");
 	}
@@ -136,15 +167,11 @@ public class GenConfig extends ConfigBase {
 		if (!file.exists() || !file.isFile()) {
 			return null;
 		}
-		GsonGen gson = new GsonGen();
-		gson.configDefaultBuilder();
-		gson.create();
 		try {
-			String content = FileUtils.readFileToString(file);
-			settings = gson.fromJson(content, Settings.class);
-			if (magicIdSettings.equals(settings.magicId)) {
-				settings.loaded = true;
-				return settings;
+			Settings prior = (Settings) readJsonFile(filename, Settings.class);
+			if (magicIdSettings.equals(prior.magicId)) {
+				prior.loaded = true;
+				return prior;
 			}
 		} catch (IOException | JsonSyntaxException e) {
 			if (!quiet) {
@@ -266,12 +293,22 @@ public class GenConfig extends ConfigBase {
 		return settings.loaded;
 	}
 
+	/**
+	 * Saves the settings to the project configuration file. On a dry run, the settings are
+	 * normalized but not written.
+	 */
 	public void save() throws IOException {
 		String filename = Strings.concat(getGenProjectPath(), getGenGrammarName() + configFileSuffix);
 		try {
 			settings.configPathname = filename;
 			normalize();
+			if (opts.flagPlan()) {
+				Log.debug(this, "Dry run; not saving " + filename);
+				return;
+			}
+			GenProfile.Span span = GenProfile.begin("settings.save");
 			saveObj2Json(filename, settings);
+			GenProfile.end(span);
 		} catch (IOException | JsonSyntaxException e) {
 			Log.error(this, "Failed to save configuration file " + filename, e);
 			throw e;
@@ -301,6 +338,20 @@ public class GenConfig extends ConfigBase {
 	}
 
 	public String getGenPathname(Unit unit) {
+		return getGenPathname(unit, null);
+	}
+
+	/**
+	 * Returns the output pathname for the given unit. Where the unit is a descriptor, the context
+	 * name specializes the output filename.
+	 * 
+	 * @param unit
+	 *            the unit to be generated
+	 * @param cname
+	 *            the context name when generating descriptors; null otherwise
+	 * @return
+	 */
+	public String getGenPathname(Unit unit, String cname) {
 		String root = unit.modelRoot;
 		String pkg = "";
 		if (unit.modelPackage.length() > 0) {
@@ -310,8 +361,8 @@ public class GenConfig extends ConfigBase {
 		}
 		String name = unit.modelFilename;
 		int idx = name.indexOf("Descriptor");
-		if (idx > 0 && getGenContextName() != null) {
-			name = getGenContextName() + name.substring(idx);
+		if (idx > 0 && cname != null) {
+			name = cname + name.substring(idx);
 		} else if (name.startsWith(getRuleSet().modelGrammar)) {
 			name = name.replace(getRuleSet().modelGrammar, getGenGrammarName());
 		}
@@ -348,10 +399,6 @@ public class GenConfig extends ConfigBase {
 
 	// /////////////////////////////////////////////////////////////////////////////////////////
 
-	public void setCurrentContextName(String contextName) {
-		this.contextName = contextName;
-	}
-
 	public Map<String, List<CtxMethod>> getContextMethods() {
 		if (ctxs == null) ctxs = new HashMap<>();
 		return ctxs;
@@ -370,13 +417,77 @@ public class GenConfig extends ConfigBase {
 		this.importCtxs = importCtxs;
 	}
 
+	public Map<String, String> getContextRules() {
+		if (ctxRules == null) ctxRules = new HashMap<>();
+		return ctxRules;
+	}
+
+	public void setContextRules(Map<String, String> ctxRules) {
+		this.ctxRules = ctxRules;
+	}
+
 	// /////////////////////////////////////////////////////////////////////////////////////////
 
-	/** Current context name when generating descriptors; null otherwise */
-	public String getGenContextName() {
-		return contextName;
+	/** True where a single, table-driven descriptor is generated in place of one per context */
+	public boolean isCompact() {
+		return opts.flagCompact();
+	}
+
+	/**
+	 * Returns the unit of the table-driven descriptor class generated in compact mode, in place of
+	 * the per-context descriptor unit of the rule set. Null if the rule set defines no primary
+	 * descriptor unit. The unit is built once for each rule set loaded.
+	 */
+	public Unit compactUnit() {
+		return compactTable;
+	}
+
+	/**
+	 * Returns the names of the template variables of the compact descriptor unit. These are bound
+	 * directly by name; they have no variable spec in the rule set.
+	 */
+	public List<String> compactVars() {
+		return Arrays.asList(compactVars);
+	}
+
+	@Override
+	public void setRuleSet(RuleSet rules) {
+		super.setRuleSet(rules);
+		compactTable = rules != null ? buildCompactUnit() : null;
+	}
+
+	private Unit buildCompactUnit() {
+		Map<String, Unit> units = getIndex().primaryUnits(TypeOf.descriptor);
+		if (units.isEmpty()) return null;
+		Unit unit = units.values().iterator().next();
+		Unit table = new Unit();
+		table.modelRoot = unit.modelRoot;
+		table.modelPackage = unit.modelPackage;
+		table.modelFilename = getRuleSet().modelGrammar + compactSuffix;
+		table.unitName = compactTemplate;
+		table.primary = true;
+		table.unitType = TypeOf.descriptor;
+		table.templateVars = compactVars();
+		table.parts = new ArrayList<>();
+		table.templateGroup = unit.templateGroup;
+		return table;
+	}
+
+	/**
+	 * Returns the template group pathname. In compact mode, the compact variant of a group, where
+	 * one exists, takes precedence.
+	 */
+	@Override
+	public String getTemplatePathname(String tmplName) {
+		if (isCompact()) {
+			String pathname = super.getTemplatePathname(compactPrefix + tmplName);
+			if (new File(pathname).isFile()) return pathname;
+		}
+		return super.getTemplatePathname(tmplName);
 	}
 
+	// /////////////////////////////////////////////////////////////////////////////////////////
+
 	/** List of contexts that exist within the scope of a named context */
 	public List<String> getGenNamedContexts(String cname) {
 		return importCtxs.get(cname);
@@ -392,6 +503,39 @@ public class GenConfig extends ConfigBase {
 		return importCtxs.keySet();
 	}
 
+	/**
+	 * Table of all contexts of a generated parser, with one entry for each rule in rule name order.
+	 * The entry of a rule is its base context, holding the contexts of any labeled alternatives.
+	 * Context methods are unique by presentation name; contexts of unknown rule are omitted.
+	 */
+	public List<Context> getGenContextTable() {
+		Map<String, Context> rules = new TreeMap<>();
+		List<Context> alts = new ArrayList<>();
+		for (String cname : new TreeSet<>(getContextMethods().keySet())) {
+			String rule = getContextRules().get(cname);
+			if (rule == null) continue;
+			Context ctx = new Context();
+			ctx.ctxName = cname;
+			ctx.ruleName = rule;
+			ctx.ctxMethods = new ArrayList<>();
+			ctx.alts = new ArrayList<>();
+			Set<String> names = new HashSet<>();
+			for (CtxMethod method : ctxs.get(cname)) {
+				if (names.add(method.presName)) ctx.ctxMethods.add(method);
+			}
+			if (cname.equals(Strings.initialUC(rule))) {
+				rules.put(rule, ctx);
+			} else {
+				alts.add(ctx);
+			}
+		}
+		for (Context alt : alts) {
+			Context base = rules.get(alt.ruleName);
+			if (base != null) base.alts.add(alt);
+		}
+		return new ArrayList<>(rules.values());
+	}
+
 	public String getGenGrammarName() {
 		return settings.grammarName;
 	}
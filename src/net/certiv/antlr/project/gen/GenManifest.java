@@ -0,0 +1,167 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.certiv.antlr.project.base.JsonStore;
+import net.certiv.antlr.project.gen.SrcGenerator.Part;
+import net.certiv.antlr.project.gen.spec.Manifest;
+import net.certiv.antlr.project.regen.spec.Unit;
+import net.certiv.antlr.project.util.Log;
+import net.certiv.antlr.project.util.Strings;
+import net.certiv.antlr.project.util.Utils;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Persisted record of the inputs used to generate each project file. The fingerprint of a file is
+ * a hash over, for the primary unit and each of its rendered parts, the unit definition, the
+ * content of the template group file and its imports, and the resolved variable values. The hash
+ * of the content generated is recorded with it. A file whose fingerprint is unchanged since the
+ * last generation run, and whose content is still as generated, need not be rendered again.
+ */
+public class GenManifest {
+
+	static final String manifestFileSuffix = "GenManifest.json";
+	private static final String magicIdManifest = "GenManifest451";
+
+	private final Map<String, String> fileHashes = new ConcurrentHashMap<>();
+
+	private final AtomicInteger rendered = new AtomicInteger();
+	private final AtomicInteger unchanged = new AtomicInteger();
+
+	private GenConfig config;
+	private Manifest manifest;
+	private boolean full;	// true => render all units regardless of fingerprint
+
+	public GenManifest(GenConfig config) {
+		super();
+		this.config = config;
+		this.manifest = new Manifest();
+		this.manifest.magicId = magicIdManifest;
+		this.manifest.fingerprints = new ConcurrentHashMap<>();
+		this.manifest.outputs = new ConcurrentHashMap<>();
+	}
+
+	public String getPathname() {
+		return Strings.concat(config.getGenProjectPath(), config.getGenGrammarName() + manifestFileSuffix);
+	}
+
+	/** Loads any prior manifest; a missing or invalid manifest results in a full generation */
+	public void load() {
+		String pathname = getPathname();
+		if (!new File(pathname).isFile()) return;
+		try {
+			Manifest prior = (Manifest) config.readJsonFile(pathname, Manifest.class);
+			if (!magicIdManifest.equals(prior.magicId) || prior.fingerprints == null) {
+				throw new IOException("Wrong magicId - not a valid manifest file: " + pathname);
+			}
+			manifest.fingerprints.putAll(prior.fingerprints);
+			if (prior.outputs != null) manifest.outputs.putAll(prior.outputs);
+			Log.info(this, "Loaded generation manifest: " + pathname);
+		} catch (IOException | JsonSyntaxException e) {
+			Log.warn(this, "Ignoring generation manifest: " + pathname + " [" + e.getMessage() + "]");
+		}
+	}
+
+	public void save() throws IOException {
+		// sorted copy for a stable file layout
+		Manifest sorted = new Manifest();
+		sorted.magicId = manifest.magicId;
+		sorted.fingerprints = new TreeMap<>(manifest.fingerprints);
+		sorted.outputs = new TreeMap<>(manifest.outputs);
+		config.saveObj2Json(getPathname(), sorted);
+	}
+
+	/**
+	 * Computes the input fingerprint for a rendered unit.
+	 * 
+	 * @param parts
+	 *            the primary unit and its parts, in render order, each with its variable values
+	 * @return the fingerprint
+	 * @throws IOException
+	 */
+	public String fingerprint(List<Part> parts) throws IOException {
+		MessageDigest md = Utils.digest();
+		for (Part part : parts) {
+			Unit unit = part.unit;
+			update(md, JsonStore.gson().toJson(unit));
+			for (String source : TemplateCache.sources(config.getTemplatePathname(unit.templateGroup))) {
+				update(md, source);
+				update(md, fileHash(source));
+			}
+			for (String vname : unit.templateVars) {
+				update(md, vname);
+				update(md, JsonStore.gson().toJson(part.varMap.get(vname)));
+			}
+		}
+		return Utils.toHex(md.digest());
+	}
+
+	public void setFull(boolean full) {
+		this.full = full;
+	}
+
+	/**
+	 * Returns true if the file was last generated from inputs of the same fingerprint, and exists in
+	 * the output sink with the content then generated. A file edited or damaged since is not
+	 * current.
+	 */
+	public boolean isCurrent(String pathname, String fingerprint) throws IOException {
+		if (full) return false;
+		if (!fingerprint.equals(manifest.fingerprints.get(pathname))) return false;
+		String output = manifest.outputs.get(pathname);
+		if (output == null) return false;
+		byte[] content = config.getSink().read(pathname);
+		return content != null && output.equals(Utils.hash(content));
+	}
+
+	/**
+	 * Records the fingerprint of a file just generated, and the hash of its content as it now
+	 * stands in the output sink.
+	 */
+	public void update(String pathname, String fingerprint) throws IOException {
+		byte[] content = config.getSink().read(pathname);
+		if (content == null) {
+			manifest.fingerprints.remove(pathname);
+			manifest.outputs.remove(pathname);
+		} else {
+			manifest.fingerprints.put(pathname, fingerprint);
+			manifest.outputs.put(pathname, Utils.hash(content));
+		}
+		rendered.incrementAndGet();
+	}
+
+	public void skipped(String pathname) {
+		Log.debug(this, "Unchanged inputs; skipping: " + pathname);
+		unchanged.incrementAndGet();
+	}
+
+	public String report() {
+		return "Generation manifest: rendered=" + rendered.get() + ", unchanged=" + unchanged.get();
+	}
+
+	// ///////////////////////////////////////////////////////////////////////////
+
+	private void update(MessageDigest md, String value) {
+		md.update(value.getBytes(StandardCharsets.UTF_8));
+		md.update((byte) 0);
+	}
+
+	// template group files are hashed once per run
+	private String fileHash(String pathname) throws IOException {
+		String hash = fileHashes.get(pathname);
+		if (hash == null) {
+			hash = Utils.hash(new File(pathname));
+			fileHashes.put(pathname, hash);
+		}
+		return hash;
+	}
+}
@@ -52,10 +52,20 @@ public class GenOptions {
 		options.addOption("i", "initialize", false, "initialize new project");
 		options.addOption("c", "create", false, "create project files");
 		options.addOption("d", "descriptors", false, "create descriptor files only");
+		options.addOption("k", "compact", false, "with -c or -d, create one table-driven descriptor in place of one per context");
 		options.addOption("h", "help", false, "help: print usage information");
 		options.addOption("H", "Hint", false, "Hint: print example usage information");
 
 		options.addOption("f", "force", false, "force overwrite operation (use with caution)");
+		options.addOption("A", "all", false, "render all units, ignoring the generation manifest");
+		options.addOption("S", "stream", false, "render directly to the output files");
+		options.addOption("C", "compile", false, "compile the project grammars in-process before generating");
+		options.addOption("w", "watch", false, "keep running and regenerate on grammar, parser, or rule set changes");
+		options.addOption("b", "batch", true, "system path to a batch manifest; generates each listed project");
+		options.addOption("z", "zip", true, "system path to a zip/jar archive to receive the generated files");
+		options.addOption("P", "plan", false, "dry run: print the generation plan without writing any files");
+		options.addOption("R", "profile", false, "record stage times, allocation, and bytes written to a profile json file");
+		options.addOption("x", "snapshot", false, "load the rule set through a binary snapshot kept next to it");
 
 	}
 
@@ -118,6 +128,14 @@ public class GenOptions {
 		return cli.hasOption("d");
 	}
 
+	public boolean flagCompact() {
+		return cli.hasOption("k");
+	}
+
+	public boolean flagSnapshot() {
+		return cli.hasOption("x");
+	}
+
 	public boolean flagHelp() {
 		return cli.hasOption("h");
 	}
@@ -130,6 +148,42 @@ public class GenOptions {
 		return cli.hasOption("f");
 	}
 
+	public boolean flagAll() {
+		return cli.hasOption("A");
+	}
+
+	public boolean flagStream() {
+		return cli.hasOption("S");
+	}
+
+	public boolean flagCompile() {
+		return cli.hasOption("C");
+	}
+
+	public boolean flagWatch() {
+		return cli.hasOption("w");
+	}
+
+	public boolean flagBatch() {
+		return cli.hasOption("b");
+	}
+
+	public String valBatchPathname() {
+		return value("b");
+	}
+
+	public String valArchivePathname() {
+		return value("z");
+	}
+
+	public boolean flagPlan() {
+		return cli.hasOption("P");
+	}
+
+	public boolean flagProfile() {
+		return cli.hasOption("R");
+	}
+
 	public String valPackageName() {
 		return value("n");
 	}
@@ -0,0 +1,122 @@
+package net.certiv.antlr.project.gen;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import net.certiv.antlr.project.util.Strings;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Immutable plan of a project generation run: the directories to create, and the copy and render
+ * jobs to execute. Every output pathname is computed when the plan is built; executing the plan
+ * involves no further path computation. A plan can be described without being executed, as a dry
+ * run.
+ */
+public class GenPlan {
+
+	public enum Kind {
+		copy,
+		render
+	}
+
+	/** A single copy or render job */
+	public static class Job {
+
+		public final Kind kind;
+		public final RenderContext ctx;	// render jobs: the unit and context to render; null for copies
+		public final String source;		// copy jobs: the source pathname; null for renders
+		public final String target;		// render jobs: the output pathname; copy jobs: the destination dir
+
+		private Job(Kind kind, RenderContext ctx, String source, String target) {
+			this.kind = kind;
+			this.ctx = ctx;
+			this.source = source;
+			this.target = target;
+		}
+
+		public static Job render(RenderContext ctx, String pathname) {
+			return new Job(Kind.render, ctx, null, pathname);
+		}
+
+		public static Job copy(String source, String destPath) {
+			return new Job(Kind.copy, null, source, destPath);
+		}
+
+		@Override
+		public String toString() {
+			if (kind == Kind.copy) return "copy   " + source + " -> " + target;
+			return "render " + ctx + " -> " + target;
+		}
+	}
+
+	private final List<String> dirs;
+	private final List<Job> jobs;
+
+	/**
+	 * @param paths
+	 *            the directories required by the outputs; reduced to the minimal set of directories
+	 *            that, created with their parents, covers them all
+	 * @param jobs
+	 *            the jobs, in planning order
+	 */
+	public GenPlan(Collection<String> paths, List<Job> jobs) {
+		super();
+		this.dirs = Collections.unmodifiableList(leafDirs(paths));
+		this.jobs = Collections.unmodifiableList(new ArrayList<>(jobs));
+	}
+
+	public List<String> getDirs() {
+		return dirs;
+	}
+
+	public List<Job> getJobs() {
+		return jobs;
+	}
+
+	public int count(Kind kind) {
+		int cnt = 0;
+		for (Job job : jobs) {
+			if (job.kind == kind) cnt++;
+		}
+		return cnt;
+	}
+
+	public String summary() {
+		return "Generation plan: " + dirs.size() + " directories, " + count(Kind.copy) + " copies, "
+				+ count(Kind.render) + " renders";
+	}
+
+	/** Returns a full, multi-line description of the plan */
+	public String describe() {
+		StringBuilder sb = new StringBuilder(summary());
+		for (String dir : dirs) {
+			sb.append(Strings.eol).append("  mkdir  ").append(dir);
+		}
+		for (Job job : jobs) {
+			sb.append(Strings.eol).append("  ").append(job);
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Drops each directory that is an ancestor of another. In sorted order, the descendants of a
+	 * directory, if any, begin at the ceiling of the directory name with a trailing separator.
+	 */
+	private static List<String> leafDirs(Collection<String> paths) {
+		TreeSet<String> sorted = new TreeSet<>();
+		for (String path : paths) {
+			sorted.add(FilenameUtils.normalizeNoEndSeparator(path, true));
+		}
+		List<String> leaves = new ArrayList<>();
+		for (String path : sorted) {
+			String prefix = path + "/";
+			String next = sorted.ceiling(prefix);
+			if (next == null || !next.startsWith(prefix)) leaves.add(path);
+		}
+		return leaves;
+	}
+}
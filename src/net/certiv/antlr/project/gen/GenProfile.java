@@ -0,0 +1,318 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.certiv.antlr.project.base.ConfigBase;
+import net.certiv.antlr.project.base.OutputSink;
+import net.certiv.antlr.project.gen.spec.Profile;
+import net.certiv.antlr.project.gen.spec.Profile.Stage;
+import net.certiv.antlr.project.gen.spec.Profile.UnitStat;
+import net.certiv.antlr.project.util.Log;
+import net.certiv.antlr.project.util.Strings;
+
+/**
+ * Process-wide recorder of the time, allocation, and output bytes of the stages of generation runs.
+ * Profiling is off unless enabled; when off, recording is a no-op. Allocation is measured per
+ * thread, where supported by the JVM.
+ */
+public class GenProfile {
+
+	private static final String magicIdProfile = "GenProfile451";
+	private static final String profileFileSuffix = "GenProfile.json";
+	private static final int summaryUnits = 5;
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private static volatile GenProfile profile;
+
+	private final long begin = System.nanoTime();
+	private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+	private final Map<String, Stage> templates = new ConcurrentHashMap<>();
+	private final Map<String, UnitStat> units = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> bytes = new ConcurrentHashMap<>();
+
+	private GenProfile() {}
+
+	/** Starts profiling; any prior recording is discarded */
+	public static void enable() {
+		profile = new GenProfile();
+	}
+
+	public static boolean isEnabled() {
+		return profile != null;
+	}
+
+	/** Returns the bytes allocated so far by the current thread; 0 if not profiling or unsupported */
+	public static long allocated() {
+		if (profile == null || !(threads instanceof com.sun.management.ThreadMXBean)) return 0;
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/** Begins timing a stage; returns null if not profiling */
+	public static Span begin(String stage) {
+		if (profile == null) return null;
+		return new Span(stage);
+	}
+
+	/** Ends timing of a stage; null safe */
+	public static void end(Span span) {
+		if (span != null && profile != null) {
+			record(profile.stages, span.stage, System.nanoTime() - span.nanos, allocated() - span.alloc);
+		}
+	}
+
+	/** Records the load of a template group */
+	public static void template(String pathname, long nanos, long alloc) {
+		if (profile != null) record(profile.templates, pathname, nanos, alloc);
+	}
+
+	/** Records the render of a single output file */
+	public static void unit(RenderContext ctx, String pathname, boolean skipped, long collectNanos, long renderNanos,
+			long writeNanos, long chars, long alloc) {
+		if (profile == null) return;
+		UnitStat stat = new UnitStat();
+		stat.unit = ctx.toString();
+		stat.pathname = pathname;
+		stat.skipped = skipped;
+		stat.collectMicros = collectNanos / 1000;
+		stat.renderMicros = renderNanos / 1000;
+		stat.writeMicros = writeNanos / 1000;
+		stat.chars = chars;
+		stat.allocBytes = alloc;
+		profile.units.put(pathname, stat);
+	}
+
+	/** Returns the sink wrapped to count the bytes written through it; the sink itself if not profiling */
+	public static OutputSink counting(OutputSink sink) {
+		if (profile == null || sink instanceof CountingSink) return sink;
+		return new CountingSink(sink);
+	}
+
+	private static void record(Map<String, Stage> map, String key, long nanos, long alloc) {
+		Stage stage = map.get(key);
+		if (stage == null) {
+			map.putIfAbsent(key, new Stage());
+			stage = map.get(key);
+		}
+		synchronized (stage) {
+			stage.count++;
+			stage.micros += nanos / 1000;
+			stage.allocBytes += alloc;
+		}
+	}
+
+	private static void count(String pathname, long cnt) {
+		GenProfile p = profile;
+		if (p == null) return;
+		AtomicLong total = p.bytes.get(pathname);
+		if (total == null) {
+			p.bytes.putIfAbsent(pathname, new AtomicLong());
+			total = p.bytes.get(pathname);
+		}
+		total.addAndGet(cnt);
+	}
+
+	/**
+	 * Writes the profile recorded so far to a json file in the project directory, and a summary to
+	 * the log.
+	 */
+	public static void report(GenConfig config) {
+		String pathname = Strings.concat(config.getGenProjectPath(), config.getGenGrammarName() + profileFileSuffix);
+		report(config, pathname, config.getGenGrammarName());
+	}
+
+	/**
+	 * Writes the profile recorded so far to the named json file, and a summary to the log.
+	 *
+	 * @param config
+	 *            used to save the file
+	 * @param pathname
+	 *            the profile file pathname
+	 * @param name
+	 *            identifies the profiled run
+	 */
+	public static void report(ConfigBase config, String pathname, String name) {
+		GenProfile p = profile;
+		if (p == null) return;
+
+		Profile report = new Profile();
+		report.magicId = magicIdProfile;
+		report.grammarName = name;
+		report.totalMicros = (System.nanoTime() - p.begin) / 1000;
+		for (AtomicLong cnt : p.bytes.values()) {
+			report.bytes += cnt.get();
+		}
+		report.stages = new TreeMap<>(p.stages);
+		report.templates = new TreeMap<>(p.templates);
+		report.units = new ArrayList<>(p.units.values());
+		for (UnitStat stat : report.units) {
+			AtomicLong cnt = p.bytes.get(stat.pathname);
+			if (cnt != null) stat.bytes = cnt.get();
+		}
+		Collections.sort(report.units, new Comparator<UnitStat>() {
+
+			@Override
+			public int compare(UnitStat a, UnitStat b) {
+				return Long.compare(total(b), total(a));
+			}
+		});
+
+		try {
+			config.saveObj2Json(pathname, report);
+		} catch (IOException e) {
+			Log.warn(GenProfile.class, "Failed to save the run profile: " + pathname);
+		}
+		Log.info(GenProfile.class, summary(report));
+	}
+
+	private static long total(UnitStat stat) {
+		return stat.collectMicros + stat.renderMicros + stat.writeMicros;
+	}
+
+	private static String summary(Profile report) {
+		StringBuilder sb = new StringBuilder("Profile: total=" + report.totalMicros / 1000 + "ms, units="
+				+ report.units.size() + ", bytes written=" + report.bytes);
+		for (String name : report.stages.keySet()) {
+			Stage stage = report.stages.get(name);
+			sb.append(Strings.eol).append("  ").append(name).append(": ").append(stage.micros / 1000).append("ms x")
+					.append(stage.count).append(", alloc=").append(stage.allocBytes / 1024).append("KB");
+		}
+		int limit = Math.min(summaryUnits, report.units.size());
+		for (UnitStat stat : report.units.subList(0, limit)) {
+			sb.append(Strings.eol).append("  ").append(stat.unit).append(": ").append(total(stat) / 1000)
+					.append("ms, ").append(stat.bytes).append(" bytes").append(stat.skipped ? " (skipped)" : "");
+		}
+		return sb.toString();
+	}
+
+	/** Timing and allocation marks at the start of a stage */
+	public static class Span {
+
+		final String stage;
+		final long nanos;
+		final long alloc;
+
+		Span(String stage) {
+			this.stage = stage;
+			this.alloc = allocated();
+			this.nanos = System.nanoTime();
+		}
+	}
+
+	/* Sink decorator that counts the bytes written, per pathname. */
+	private static class CountingSink implements OutputSink {
+
+		private final OutputSink sink;
+
+		CountingSink(OutputSink sink) {
+			this.sink = sink;
+		}
+
+		@Override
+		public boolean isFile(String pathname) throws IOException {
+			return sink.isFile(pathname);
+		}
+
+		@Override
+		public boolean matches(String pathname, byte[] content) throws IOException {
+			return sink.matches(pathname, content);
+		}
+
+		@Override
+		public byte[] read(String pathname) throws IOException {
+			return sink.read(pathname);
+		}
+
+		@Override
+		public OutputStream open(final String pathname) throws IOException {
+			return new FilterOutputStream(sink.open(pathname)) {
+
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					count(pathname, 1);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					count(pathname, len);
+				}
+			};
+		}
+
+		// staged output is counted only once committed, as only then is it written
+		@Override
+		public Staged stage(final String pathname) throws IOException {
+			final Staged staged = sink.stage(pathname);
+			final long[] length = new long[1];
+			final OutputStream out = new FilterOutputStream(staged.stream()) {
+
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					length[0]++;
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					length[0] += len;
+				}
+			};
+			return new Staged() {
+
+				@Override
+				public OutputStream stream() {
+					return out;
+				}
+
+				@Override
+				public boolean commit() throws IOException {
+					boolean replaced = staged.commit();
+					if (replaced) count(pathname, length[0]);
+					return replaced;
+				}
+
+				@Override
+				public void close() throws IOException {
+					staged.close();
+				}
+			};
+		}
+
+		@Override
+		public void delete(String pathname) throws IOException {
+			sink.delete(pathname);
+		}
+
+		@Override
+		public void createDirs(String path) throws IOException {
+			sink.createDirs(path);
+		}
+
+		@Override
+		public void copy(File source, String destPath) throws IOException {
+			sink.copy(source, destPath);
+			count(new File(destPath, source.getName()).getPath(), source.length());
+		}
+
+		@Override
+		public void close() throws IOException {
+			sink.close();
+		}
+	}
+}
@@ -17,7 +17,6 @@ package net.certiv.antlr.project.gen;
 import java.io.File;
 import java.io.IOException;
 
-import net.certiv.antlr.project.regen.spec.Unit;
 import net.certiv.antlr.project.util.Log;
 import net.certiv.antlr.project.util.Utils;
 import net.certiv.antlr.project.util.Log.LogLevel;
@@ -52,6 +51,15 @@ public class GenProject {
 			Log.error(this, "Failure to determine Cwd", e);
 			return;
 		}
+		if (opts.flagProfile()) GenProfile.enable();
+
+		// generate each project of a batch manifest
+		if (opts.flagBatch()) {
+			if (!new GenBatch(cwd, opts).run()) {
+				Log.error(this, "Batch generation failed");
+			}
+			return;
+		}
 
 		// create empty configuration
 		GenConfig config = new GenConfig(cwd, opts);
@@ -85,9 +93,9 @@ public class GenProject {
 			}
 
 			config.loadRuleSet(opts.valRuleSetPathname());
-			Unit unit = config.getRuleSet().units.get("GenProject");
-			SrcGenerator srcGen = new SrcGenerator(config, false);
-			srcGen.dispatch(unit);
+			if (!new Productions(opts, config).generateUnit("GenProject")) {
+				Log.error(this, "Project initialization failed");
+			}
 			return;
 		}
 
@@ -108,17 +116,16 @@ public class GenProject {
 
 		// create/validate directory structure & generate project
 		if (opts.flagCreate() || opts.flagDescriptors() || opts.flagUnitType()) {
-			if (!funcs.createDirs()) {
-				Log.error(this, "Failure in directory structure creation");
-				return;
-			}
-			Log.info(this, "Directory structure created/validated");
-
 			if (!funcs.generateProject()) {
 				Log.error(this, "Project generation failed");
 				return;
 			}
 			Log.info(this, "Project generation completed");
+			GenProfile.report(config);
+
+			if (opts.flagWatch()) {
+				new GenWatcher(opts, config, funcs).run();
+			}
 		}
 	}
 }
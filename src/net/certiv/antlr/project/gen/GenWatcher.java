@@ -0,0 +1,176 @@
+package net.certiv.antlr.project.gen;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.certiv.antlr.project.util.Log;
+
+/**
+ * Watches the project grammars, the generated parser, and the rule set, and regenerates the
+ * affected parts of the project whenever they change. Bursts of change events, as produced by
+ * editors and by the Antlr tool, are debounced into a single regeneration.
+ * <ul>
+ * <li>a grammar change recompiles the grammars (in-process compilation only), then re-extracts the
+ * parser contexts and regenerates the context dependent units;</li>
+ * <li>a generated parser change re-extracts the parser contexts and regenerates the context
+ * dependent units;</li>
+ * <li>a rule set change reloads the rule set and regenerates the requested units.</li>
+ * </ul>
+ * Units whose inputs are unchanged are skipped by the generation manifest.
+ */
+public class GenWatcher {
+
+	private static final long debounceMillis = 250;
+
+	private enum Source {
+		grammar,
+		parser,
+		rules
+	}
+
+	private GenOptions opts;
+	private GenConfig config;
+	private Productions funcs;
+
+	private WatchService watcher;
+	private Map<WatchKey, Path> dirs = new HashMap<>();
+
+	private String parserName;
+	private String ruleSetName;
+	private Path ruleSetDir;
+
+	public GenWatcher(GenOptions opts, GenConfig config, Productions funcs) {
+		super();
+		this.opts = opts;
+		this.config = config;
+		this.funcs = funcs;
+	}
+
+	/**
+	 * Watches until the thread is interrupted or the watch service fails.
+	 */
+	public void run() {
+		File parser = new File(config.getGenParserPathname());
+		File genDir = parser.getParentFile();
+		File grammarDir = genDir.getParentFile();
+		File ruleSet = new File(config.getRuleSetPathname()).getAbsoluteFile();
+		parserName = parser.getName();
+		ruleSetName = ruleSet.getName();
+		ruleSetDir = ruleSet.getParentFile().toPath();
+
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			register(grammarDir);
+			register(genDir);
+			register(ruleSet.getParentFile());
+		} catch (IOException e) {
+			Log.error(this, "Failed to start watch service", e);
+			return;
+		}
+		Log.info(this, "Watching for changes (interrupt to exit)");
+
+		try {
+			while (true) {
+				boolean[] changed = new boolean[Source.values().length];
+				if (!collect(watcher.take(), changed)) continue;
+
+				// debounce: gather further events until quiet
+				WatchKey key;
+				while ((key = watcher.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+					collect(key, changed);
+				}
+				regenerate(changed);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				watcher.close();
+			} catch (IOException e) {}
+		}
+		Log.info(this, "Watch ended");
+	}
+
+	private void register(File dir) throws IOException {
+		if (!dir.isDirectory()) {
+			Log.warn(this, "Not watching missing directory: " + dir);
+			return;
+		}
+		Path path = dir.toPath();
+		if (dirs.containsValue(path)) return;
+		dirs.put(path.register(watcher, ENTRY_CREATE, ENTRY_MODIFY), path);
+	}
+
+	/*
+	 * Records the sources changed according to the events of the given key. Returns true if any
+	 * relevant change was seen.
+	 */
+	private boolean collect(WatchKey key, boolean[] changed) {
+		Path dir = dirs.get(key);
+		boolean relevant = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				changed[Source.grammar.ordinal()] = true;
+				changed[Source.parser.ordinal()] = true;
+				changed[Source.rules.ordinal()] = true;
+				relevant = true;
+				continue;
+			}
+			Source source = classify(dir, ((Path) event.context()).toString());
+			if (source != null) {
+				changed[source.ordinal()] = true;
+				relevant = true;
+			}
+		}
+		if (!key.reset()) {
+			Log.warn(this, "No longer watching: " + dirs.remove(key));
+		}
+		return relevant;
+	}
+
+	private Source classify(Path dir, String name) {
+		if (name.equals(ruleSetName) && dir.equals(ruleSetDir)) return Source.rules;
+		if (name.endsWith(".g4")) return Source.grammar;
+		if (name.equals(parserName)) return Source.parser;
+		return null;
+	}
+
+	private void regenerate(boolean[] changed) {
+		long beg = System.nanoTime();
+		boolean rules = changed[Source.rules.ordinal()];
+		boolean contexts;
+		if (opts.flagCompile()) {
+			// parser changes are the product of compiling the grammars
+			contexts = changed[Source.grammar.ordinal()];
+		} else {
+			contexts = changed[Source.parser.ordinal()];
+			if (changed[Source.grammar.ordinal()] && !contexts) {
+				Log.info(this, "Grammar changed; awaiting the regenerated parser");
+			}
+		}
+		if (!rules && !contexts) return;
+
+		if (rules && !funcs.reloadRuleSet()) return;
+		if (contexts && !funcs.refreshContexts()) return;
+
+		boolean ok = rules ? funcs.generateProject() : funcs.generateContextUnits();
+		long ms = (System.nanoTime() - beg) / 1000000;
+		if (ok) {
+			Log.info(this, "Regenerated in " + ms + "ms");
+		} else {
+			Log.error(this, "Regeneration failed");
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.certiv.antlr.project.base.CtxMethod;
+import net.certiv.antlr.project.base.FileSink;
+import net.certiv.antlr.project.util.Log;
+import net.certiv.antlr.project.util.Strings;
+import net.certiv.antlr.project.util.Utils;
+
+import org.antlr.v4.Tool;
+import org.antlr.v4.codegen.CodeGenerator;
+import org.antlr.v4.codegen.OutputModelController;
+import org.antlr.v4.codegen.ParserFactory;
+import org.antlr.v4.codegen.model.ParserFile;
+import org.antlr.v4.codegen.model.RuleFunction;
+import org.antlr.v4.codegen.model.decl.AltLabelStructDecl;
+import org.antlr.v4.codegen.model.decl.AttributeDecl;
+import org.antlr.v4.codegen.model.decl.ContextRuleGetterDecl;
+import org.antlr.v4.codegen.model.decl.ContextRuleListGetterDecl;
+import org.antlr.v4.codegen.model.decl.ContextRuleListIndexedGetterDecl;
+import org.antlr.v4.codegen.model.decl.ContextTokenGetterDecl;
+import org.antlr.v4.codegen.model.decl.ContextTokenListGetterDecl;
+import org.antlr.v4.codegen.model.decl.ContextTokenListIndexedGetterDecl;
+import org.antlr.v4.codegen.model.decl.Decl;
+import org.antlr.v4.codegen.model.decl.RuleContextDecl;
+import org.antlr.v4.codegen.model.decl.RuleContextListDecl;
+import org.antlr.v4.codegen.model.decl.StructDecl;
+import org.antlr.v4.codegen.model.decl.TokenDecl;
+import org.antlr.v4.codegen.model.decl.TokenListDecl;
+import org.antlr.v4.tool.ANTLRMessage;
+import org.antlr.v4.tool.ANTLRToolListener;
+import org.antlr.v4.tool.Grammar;
+import org.antlr.v4.tool.ast.GrammarRootAST;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Compiles the project grammars using the Antlr tool running within this JVM, rather than as a
+ * separate process, and takes the parser context classes and their accessors directly from the
+ * in-memory code generation model of the parser grammar. The generated recognizer files are written
+ * to the parser gen directory only where their content has changed.
+ */
+public class GrammarCompiler {
+
+	private static final String lexerSuffix = "Lexer.g4";
+	private static final String parserSuffix = "Parser.g4";
+	private static final String combinedSuffix = ".g4";
+
+	private static final FileSink local = new FileSink();
+	private static final Pattern attrType = Pattern.compile("(\\w+)(<\\w+>)?");
+
+	private GenConfig config;
+	private int written;
+	private int unchanged;
+
+	public GrammarCompiler(GenConfig config) {
+		super();
+		this.config = config;
+	}
+
+	/**
+	 * Compiles the lexer and parser grammars of the project, or the combined grammar where there is
+	 * no separate lexer and parser grammar, and adds the parser contexts found to the given scanner.
+	 *
+	 * @param scanner
+	 *            receives the parser context classes
+	 * @return true if the grammars compiled without error
+	 */
+	public boolean compile(ContextScanner scanner) {
+		String genPath = FilenameUtils.getFullPathNoEndSeparator(config.getGenParserPathname());
+		String grammarPath = FilenameUtils.getFullPathNoEndSeparator(genPath);
+		String name = config.getGenGrammarName();
+
+		List<String> grammars = new ArrayList<>();
+		for (String suffix : Arrays.asList(lexerSuffix, parserSuffix)) {
+			String pathname = Strings.concat(grammarPath, name + suffix);
+			if (new File(pathname).isFile()) grammars.add(pathname);
+		}
+		if (grammars.isEmpty()) {
+			String pathname = Strings.concat(grammarPath, name + combinedSuffix);
+			if (new File(pathname).isFile()) grammars.add(pathname);
+		}
+		if (grammars.isEmpty()) {
+			Log.error(this, "No grammar found for " + name + " in " + grammarPath);
+			return false;
+		}
+		if (!Utils.createDirs(genPath)) {
+			Log.error(this, "Failed creating parser gen directory: " + genPath);
+			return false;
+		}
+
+		long beg = System.nanoTime();
+		final Tool tool = new InProcessTool(new String[] { "-o", genPath, "-lib", genPath });
+		tool.addListener(new ANTLRToolListener() {
+
+			@Override
+			public void info(String msg) {
+				Log.debug(GrammarCompiler.this, msg);
+			}
+
+			@Override
+			public void error(ANTLRMessage msg) {
+				Log.error(GrammarCompiler.this, tool.errMgr.getMessageTemplate(msg).render());
+			}
+
+			@Override
+			public void warning(ANTLRMessage msg) {
+				Log.warn(GrammarCompiler.this, tool.errMgr.getMessageTemplate(msg).render());
+			}
+		});
+
+		Grammar parser = null;
+		for (String pathname : grammars) {
+			GrammarRootAST ast = tool.parseGrammar(pathname);
+			if (ast == null || ast.hasErrors) {
+				Log.error(this, "Grammar parse failed: " + pathname);
+				return false;
+			}
+			Grammar g = tool.createGrammar(ast);
+			g.fileName = pathname;
+			tool.process(g, true);
+			if (tool.getNumErrors() > 0) {
+				Log.error(this, "Grammar compile failed: " + pathname);
+				return false;
+			}
+			if (!g.isLexer()) parser = g;
+		}
+		if (parser == null) {
+			Log.error(this, "No parser grammar found for " + name);
+			return false;
+		}
+
+		extractContexts(parser, scanner);
+		long ms = (System.nanoTime() - beg) / 1000000;
+		Log.info(this, "Compiled " + grammars.size() + " grammars in " + ms + "ms: " + written + " files written, "
+				+ unchanged + " unchanged");
+		return true;
+	}
+
+	/*
+	 * Builds the output model of the parser and reads the context struct declarations, in the same
+	 * order as they are rendered into the generated parser.
+	 */
+	private void extractContexts(Grammar parser, ContextScanner scanner) {
+		String tokenType = parser.getOptionString("TokenLabelType");
+		if (tokenType == null) tokenType = "Token";
+
+		CodeGenerator gen = new CodeGenerator(parser);
+		ParserFactory factory = new ParserFactory(gen);
+		OutputModelController controller = new OutputModelController(factory);
+		factory.setController(controller);
+		ParserFile file = (ParserFile) controller.buildParserOutputModel();
+
+		for (RuleFunction func : file.parser.funcs) {
+			define(func.ruleCtx, func.name, tokenType, scanner);
+			if (func.altLabelCtxs != null) {
+				for (AltLabelStructDecl struct : func.altLabelCtxs.values()) {
+					define(struct, func.name, tokenType, scanner);
+				}
+			}
+		}
+	}
+
+	private void define(StructDecl struct, String ruleName, String tokenType, ContextScanner scanner) {
+		List<CtxMethod> members = new ArrayList<>();
+		for (Decl decl : struct.attrs) {
+			CtxMethod ms = field(decl, tokenType);
+			if (ms != null) members.add(ms);
+		}
+		for (Decl decl : struct.getters) {
+			CtxMethod ms = getter(decl);
+			if (ms != null) members.add(ms);
+		}
+		scanner.define(struct.name, members, ruleName);
+	}
+
+	// subclasses are tested before their superclasses
+	private CtxMethod field(Decl decl, String tokenType) {
+		if (decl instanceof TokenListDecl) return member("List", "<" + tokenType + ">", decl.name, null);
+		if (decl instanceof TokenDecl) return member(tokenType, null, decl.name, null);
+		if (decl instanceof RuleContextListDecl) {
+			return member("List", "<" + ((RuleContextListDecl) decl).ctxName + ">", decl.name, null);
+		}
+		if (decl instanceof RuleContextDecl) return member(((RuleContextDecl) decl).ctxName, null, decl.name, null);
+		if (decl instanceof AttributeDecl) {
+			Matcher m = attrType.matcher(((AttributeDecl) decl).type.trim());
+			if (m.matches()) return member(m.group(1), m.group(2), decl.name, null);
+		}
+		return null; // token types, unrecognized attribute types
+	}
+
+	private CtxMethod getter(Decl decl) {
+		if (decl instanceof ContextTokenListIndexedGetterDecl) return null;
+		if (decl instanceof ContextRuleListIndexedGetterDecl) return null;
+		if (decl instanceof ContextTokenListGetterDecl) return member("List", "<TerminalNode>", decl.name, "()");
+		if (decl instanceof ContextTokenGetterDecl) return member("TerminalNode", null, decl.name, "()");
+		if (decl instanceof ContextRuleListGetterDecl) {
+			return member("List", "<" + ((ContextRuleListGetterDecl) decl).ctxName + ">", decl.name, "()");
+		}
+		if (decl instanceof ContextRuleGetterDecl) {
+			return member(((ContextRuleGetterDecl) decl).ctxName, null, decl.name, "()");
+		}
+		return null;
+	}
+
+	private CtxMethod member(String retClass, String retType, String callName, String callType) {
+		CtxMethod ms = new CtxMethod();
+		ms.retClass = retClass;
+		ms.retType = retType;
+		ms.callName = callName;
+		ms.callType = callType;
+		return ms;
+	}
+
+	/*
+	 * Tool that buffers each generated file in memory and, on close, writes the file only if it does
+	 * not already exist with identical content.
+	 */
+	private class InProcessTool extends Tool {
+
+		InProcessTool(String[] args) {
+			super(args);
+		}
+
+		@Override
+		public Writer getOutputFileWriter(Grammar g, String fileName) throws IOException {
+			final File file = new File(getOutputDirectory(g.fileName), fileName);
+			final Charset cs = grammarEncoding != null ? Charset.forName(grammarEncoding) : Charset.defaultCharset();
+			return new StringWriter() {
+
+				@Override
+				public void close() throws IOException {
+					byte[] content = toString().getBytes(cs);
+					if (local.matches(file.getPath(), content)) {
+						unchanged++;
+						return;
+					}
+					FileUtils.writeByteArrayToFile(file, content);
+					written++;
+				}
+			};
+		}
+	}
+}
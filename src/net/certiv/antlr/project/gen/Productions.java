@@ -2,33 +2,42 @@ package net.certiv.antlr.project.gen;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
-import net.certiv.antlr.project.base.CtxMethod;
+import net.certiv.antlr.project.base.FileSink;
 import net.certiv.antlr.project.base.TypeOf;
+import net.certiv.antlr.project.base.ZipSink;
+import net.certiv.antlr.project.regen.spec.RuleSet;
 import net.certiv.antlr.project.regen.spec.Unit;
 import net.certiv.antlr.project.util.Log;
 import net.certiv.antlr.project.util.Strings;
-import net.certiv.antlr.project.util.Utils;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.atteo.evo.inflector.English;
 
 public class Productions {
 
-	private static final Pattern ctxClass = Pattern.compile("(public static class (\\w+) .*?\\}\\s+\\})",
-			Pattern.DOTALL);
-	private static final Pattern ctxMthds = Pattern.compile("public (\\w+)(\\<\\w+\\>)? (\\w+)(\\(.*?\\))?");
+	// bounded pool shared by all generation runs; jobs are mostly file I/O bound
+	private static final ForkJoinPool ioPool = new ForkJoinPool(Math.max(4, 2 * Runtime.getRuntime()
+			.availableProcessors()));
 
 	private GenConfig config;
 	private GenOptions opts;
 	private SrcGenerator srcGen;
+	private ZipSink ownedSink;	// archive output opened, and completed, by this instance
 
 	// ///////////////////////////////////////////////////////////////////////////
 
@@ -37,54 +46,50 @@ public class Productions {
 		this.opts = opts;
 		this.config = config;
 		this.srcGen = new SrcGenerator(config, opts.flagForce());
+		this.srcGen.setStreaming(opts.flagStream());
+		// a sink set by the caller, e.g., shared by a batch, is left for the caller to close
+		if (opts.valArchivePathname() != null && config.getSink() instanceof FileSink) {
+			ownedSink = new ZipSink(opts.valArchivePathname(), config.getGenProjectPath());
+			config.setSink(ownedSink);
+		}
+		config.setSink(GenProfile.counting(config.getSink()));
 		init();
 	}
 
 	private void init() {
-		config.loadRuleSet(config.getRuleSetPathname());
-		if (config.isRuleSetLoaded() && generatedParserExists()) {
-			parseGeneratedFiles();
-		} else {
-			Log.info(this, "A generated parser is required before descriptors can be generated");
-		}
-	}
-
-	public boolean createDirs() {
-		boolean ok = false;
-		if (config.isRuleSetLoaded()) {
-			List<String> pathList = new ArrayList<>();
-			for (Unit unit : config.getUnits().values()) {
-				String opath = config.getGenPathname(unit);
-				opath = FilenameUtils.getFullPathNoEndSeparator(opath);
-				// TODO: this is a hack
-				if (opath.endsWith("parser")) {
-					opath += Strings.pathSepStr + "gen";
-				}
-				addUniquePath(pathList, opath);
-			}
-
-			ok = !pathList.isEmpty();
-			if (ok && opts.flagCreate()) {
-				for (String path : pathList) {
-					Log.debug(this, "Making: " + path);
-					ok &= Utils.createDirs(path);
-				}
-			}
-			// if (ok && opts.flagVerify()) {} // TODO: add verify option to gen?
+		// a rule set may be shared, already loaded, for batch generation
+		if (!config.isRuleSetLoaded()) {
+			GenProfile.Span span = GenProfile.begin("ruleSet.load");
+			config.loadRuleSet(config.getRuleSetPathname());
+			GenProfile.end(span);
 		}
-		return ok;
+		// a new project has no parser yet, and its initial unit needs none
+		if (config.isRuleSetLoaded() && !opts.flagInit()) refreshContexts();
 	}
 
-	private void addUniquePath(List<String> paths, String path) {
-		for (String p : paths) {
-			if (p.startsWith(path)) return; // includes equal
-			if (path.startsWith(p)) {
-				int idx = paths.indexOf(p);
-				paths.set(idx, path);
-				return;
-			}
-		}
-		paths.add(path);
+	/**
+	 * (Re)extracts the parser contexts, replacing any previously found. The grammars are compiled
+	 * first where in-process compilation is enabled, other than on a dry run, which plans from any
+	 * existing generated parser instead.
+	 */
+	public boolean refreshContexts() {
+		if (opts.flagCompile() && !opts.flagPlan()) return compileGrammars();
+		if (generatedParserExists()) return parseGeneratedFiles();
+		Log.info(this, "A generated parser is required before descriptors can be generated");
+		return false;
+	}
+
+	/**
+	 * Reloads the rule set. On failure, the previously loaded rule set is retained.
+	 */
+	public boolean reloadRuleSet() {
+		RuleSet prior = config.getRuleSet();
+		GenProfile.Span span = GenProfile.begin("ruleSet.load");
+		boolean ok = config.loadRuleSet(config.getRuleSetPathname());
+		GenProfile.end(span);
+		if (ok && config.getRuleSet() != prior) return true;
+		Log.warn(this, "Rule set reload failed; retaining the prior rule set");
+		return false;
 	}
 
 	public boolean generatedParserExists() {
@@ -108,79 +113,64 @@ public class Productions {
 		return false;
 	}
 
-	private boolean parseParser(File fParser) throws IOException {
-		Map<String, List<CtxMethod>> ctxs = config.getContextMethods();
-		Map<String, List<String>> importCtxs = config.getImportContexts();
-
-		String parser = FileUtils.readFileToString(fParser.getCanonicalFile());
-		Matcher m = ctxClass.matcher(parser);
-		while (m.find()) {
-			String ctx = m.group(1);
-			String ctxName = m.group(2);
-			if (ctx == null || ctxName == null) return false;
-
-			ctxName = ctxName.replace("Context", "");
-
-			List<CtxMethod> methods = new ArrayList<>();
-			List<String> imports = new ArrayList<>();
-
-			// import statements will always include self
-			imports.add(ctxName);
-
-			Matcher o = ctxMthds.matcher(ctx);
-			while (o.find()) {
-				CtxMethod ms = new CtxMethod();
-
-				ms.retClass = o.group(1);
-				ms.retType = o.group(2);
-				ms.callName = o.group(3);
-				ms.callType = o.group(4);
-
-				// skip unwanted cases that bleed through the regexp
-				if (ms.retClass.equals("int")) continue;
-				if (ms.retClass.equals("static")) continue;
-				if (ms.callType != null && ms.callType.length() > 2) continue;
-
-				if (ms.retClass == null || ms.callName == null) return false;
-
-				// process values
-				// ms.presName = Strings.initialLC(ms.callName);
-				ms.presName = ms.callName;
-				if (ms.callType == null) ms.callType = "";
-				if (ms.retType != null) {
-					ms.list = true;
-					ms.retClass += ms.retType;
-					ms.retType = ms.retType.substring(1, ms.retType.length() - 1);
-					ms.presName = English.plural(ms.presName);
-
-					if (ms.retType.endsWith("Context")) {
-						ms.contextName = ms.retType.substring(0, ms.retType.lastIndexOf("Context"));
-						if (!imports.contains(ms.contextName)) {
-							imports.add(ms.contextName);
-						}
-					}
-				} else {
-					if (ms.retClass.endsWith("Context")) {
-						ms.contextName = ms.retClass.substring(0, ms.retClass.lastIndexOf("Context"));
-						if (!imports.contains(ms.contextName)) {
-							imports.add(ms.contextName);
-						}
-					}
-				}
-				methods.add(ms);
-			}
-			ctxs.put(ctxName, methods);
-			importCtxs.put(ctxName, imports);
+	/*
+	 * Compiles the project grammars in-process; the context classes and their accessors are taken
+	 * from the code generation model rather than from the generated parser source.
+	 */
+	private boolean compileGrammars() {
+		ContextScanner scanner = new ContextScanner();
+		GenProfile.Span span = GenProfile.begin("grammar.compile");
+		boolean ok = new GrammarCompiler(config).compile(scanner);
+		GenProfile.end(span);
+		if (!ok) {
+			Log.error(this, "Grammar compilation failed");
+			return false;
 		}
-		config.setContextMethods(ctxs);
-		config.setImportContexts(importCtxs);
+		config.setContextMethods(scanner.getContextMethods());
+		config.setImportContexts(scanner.getImportContexts());
+		config.setContextRules(scanner.getContextRules());
+		Log.debug(this, "Found " + scanner.getContextMethods().size() + " parser contexts");
+		return true;
+	}
+
+	/*
+	 * Extracts the context classes and their accessors from the generated parser. The parser file is
+	 * read whole onto the heap, rather than mapped, so that no mapping outlives the scan to block the
+	 * next Antlr rewrite of the file. Package visible for benchmarks.
+	 */
+	boolean parseParser(File fParser) throws IOException {
+		ContextScanner scanner = new ContextScanner();
+		GenProfile.Span span = GenProfile.begin("parser.parse");
+		scanner.scan(ByteBuffer.wrap(Files.readAllBytes(fParser.getCanonicalFile().toPath())));
+		GenProfile.end(span);
+		config.setContextMethods(scanner.getContextMethods());
+		config.setImportContexts(scanner.getImportContexts());
+		config.setContextRules(scanner.getContextRules());
+		Log.debug(this, "Found " + scanner.getContextMethods().size() + " parser contexts");
 		return true;
 	}
 
 	// generate specialized files
 	public boolean generateProject() {
-		Log.info(this, "Beginning project generation run");
+		List<TypeOf> types = requestedTypes();
+		if (types == null) return false;
+		return generate(types);
+	}
+
+	/**
+	 * Regenerates only the units that depend on the parser contexts, limited to the unit types
+	 * requested on the command line.
+	 */
+	public boolean generateContextUnits() {
+		List<TypeOf> types = requestedTypes();
+		if (types == null) return false;
+		types.retainAll(Arrays.asList(TypeOf.descriptor, TypeOf.derived, TypeOf.walker));
+		if (types.isEmpty()) return true;
+		return generate(types);
+	}
 
+	// returns the unit types requested on the command line; null if invalid
+	private List<TypeOf> requestedTypes() {
 		List<TypeOf> types = new ArrayList<>();
 		if (opts.flagCreate()) {
 			types.addAll(Arrays.asList(TypeOf.values()));
@@ -192,41 +182,248 @@ public class Productions {
 			}
 
 		} else if (opts.flagDescriptors()) {
-			if (generatedParserExists()) types.add(TypeOf.descriptor);
+			if (generatedParserExists()) {
+				types.add(TypeOf.descriptor);
+				// compact descriptors are created through the table; the walkers must agree
+				if (opts.flagCompact()) types.add(TypeOf.walker);
+			}
 		} else if (opts.flagUnitType()) {
 			try {
 				TypeOf requested = TypeOf.valueOf(opts.valUnitType());
 				types.add(requested);
 			} catch (Exception e) {
 				Log.error(this, "Not a valid 'unit type' identifier: " + opts.valUnitType());
-				return false;
+				return null;
 			}
 		}
+		return types;
+	}
+
+	/**
+	 * Generates the single named unit of the rule set, as when initializing a new project. An
+	 * existing file is never overwritten, no generation manifest is read or written, and only the
+	 * template variables used by the unit are bound.
+	 */
+	public boolean generateUnit(String name) {
+		Unit unit = config.isRuleSetLoaded() ? config.getRuleSet().units.get(name) : null;
+		if (unit == null) {
+			Log.error(this, "Unit not found in the rule set: " + name);
+			return false;
+		}
+		GenProfile.Span span = GenProfile.begin("plan");
+		GenPlan plan = plan(Collections.singletonList(unit));
+		GenProfile.end(span);
+		if (opts.flagPlan()) {
+			Log.info(this, plan.describe());
+			return true;
+		}
+
+		SrcGenerator unitGen = new SrcGenerator(config, false);
+		unitGen.setStreaming(opts.flagStream());
+		try {
+			unitGen.bind(unit);
+		} catch (IOException e) {
+			Log.error(this, "Failed to bind template variables", e);
+			return false;
+		}
+		span = GenProfile.begin("execute");
+		boolean ok = execute(plan, unitGen);
+		GenProfile.end(span);
+		return closeOwnedSink() && ok;
+	}
+
+	private boolean generate(List<TypeOf> types) {
+		GenProfile.Span span = GenProfile.begin("plan");
+		GenPlan plan = plan(types);
+		GenProfile.end(span);
+		return generate(plan);
+	}
 
+	private boolean generate(GenPlan plan) {
+		Log.info(this, "Beginning project generation run");
+		if (plan == null) {
+			Log.error(this, "No rule set loaded; nothing to generate");
+			return false;
+		}
+		if (opts.flagPlan()) {
+			Log.info(this, plan.describe());
+			return true;
+		}
+		Log.info(this, plan.summary());
+
+		GenProfile.Span span = GenProfile.begin("manifest.load");
+		GenManifest manifest = new GenManifest(config);
+		manifest.load();
+		manifest.setFull(opts.flagAll());
+		srcGen.setManifest(manifest);
+		GenProfile.end(span);
+
+		span = GenProfile.begin("execute");
+		boolean ok = execute(plan);
+		GenProfile.end(span);
+		if (!closeOwnedSink()) return false;
+		span = GenProfile.begin("manifest.save");
+		try {
+			manifest.save();
+		} catch (IOException e) {
+			Log.warn(this, "Failed to save generation manifest; next run will render all units");
+		}
+		GenProfile.end(span);
+		Log.info(this, manifest.report());
+		Log.info(this, config.outputReport());
+		Log.info(this, TemplateCache.report());
+		Log.info(this, "Done");
+		return ok;
+	}
+
+	// completes an archive opened by this instance; a sink set by the caller is left open
+	private boolean closeOwnedSink() {
+		if (ownedSink == null) return true;
+		try {
+			ownedSink.close();
+			return true;
+		} catch (IOException e) {
+			Log.error(this, "Failed to complete output to " + ownedSink.getArchivePathname(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Plans a generation run for the given unit types. The directories planned are those of every
+	 * unit in the rule set, together with the generated parser directory; the jobs planned are those
+	 * of the primary units of the given types.
+	 * 
+	 * @return the plan; null if there is nothing to plan
+	 */
+	public GenPlan plan(List<TypeOf> types) {
+		if (!config.isRuleSetLoaded()) return null;
+
+		// primary units only, taken from the index type by type
+		EnumSet<TypeOf> wanted = EnumSet.noneOf(TypeOf.class);
+		wanted.addAll(types);
+		List<Unit> primaries = new ArrayList<>();
+		for (TypeOf type : wanted) {
+			primaries.addAll(config.getIndex().primaryUnits(type).values());
+		}
+		return plan(primaries);
+	}
+
+	/**
+	 * Plans a generation run for the given primary units. The directories planned are those of
+	 * every unit in the rule set, together with the generated parser directory.
+	 * 
+	 * @return the plan; null if there is nothing to plan
+	 */
+	public GenPlan plan(Collection<Unit> primaries) {
+		if (!config.isRuleSetLoaded()) return null;
+
+		Set<String> dirs = new HashSet<>();
+		dirs.add(FilenameUtils.getFullPathNoEndSeparator(config.getGenParserPathname()));
 		Map<String, Unit> units = config.getRuleSet().units;
-		for (String uname : units.keySet()) {
-			Unit unit = units.get(uname);
+		for (Unit unit : units.values()) {
+			dirs.add(FilenameUtils.getFullPathNoEndSeparator(config.getGenPathname(unit)));
+		}
 
-			// Excusions
-			if (!types.contains(unit.unitType)) continue;
-			if (!unit.primary) continue;
+		List<GenPlan.Job> jobs = new ArrayList<>();
+		for (Unit unit : primaries) {
+			switch (unit.unitType) {
+				// Special case - resources copied from model to new project
+				case binary:
+				case document:
+					String srcbinary = Strings.concat(config.getModelBasePath(), unit.modelRoot, unit.modelFilename);
+					String destdir = Strings.concat(config.getGenProjectPath(), unit.modelRoot);
+					jobs.add(GenPlan.Job.copy(srcbinary, destdir));
+					break;
+
+				// one render for each parser context, or a single descriptor table
+				case descriptor:
+					if (config.isCompact()) {
+						Unit table = config.compactUnit();
+						jobs.add(GenPlan.Job.render(new RenderContext(table, null), config.getGenPathname(table)));
+						break;
+					}
+					for (String cname : config.getContextMethods().keySet()) {
+						RenderContext ctx = new RenderContext(unit, cname);
+						jobs.add(GenPlan.Job.render(ctx, config.getGenPathname(unit, cname)));
+					}
+					break;
+
+				default:
+					jobs.add(GenPlan.Job.render(new RenderContext(unit, null), config.getGenPathname(unit)));
+			}
+		}
+		return new GenPlan(dirs, jobs);
+	}
 
-			// Special case - resources copied from model to new project
-			if (unit.unitType == TypeOf.binary || unit.unitType == TypeOf.document) {
-				String srcbinary = Strings.concat(config.getModelBasePath(), unit.modelRoot, unit.modelFilename);
-				String destdir = Strings.concat(config.getGenProjectPath(), unit.modelRoot);
+	/**
+	 * Creates the planned directories, then runs the copy and render jobs on the bounded I/O pool.
+	 * The template variables are bound afresh on each run, as the rule set may have been reloaded
+	 * since the last.
+	 * 
+	 * @return false if any job failed
+	 */
+	public boolean execute(GenPlan plan) {
+		try {
+			srcGen.bind();
+		} catch (IOException e) {
+			Log.error(this, "Failed to bind template variables", e);
+			return false;
+		}
+		return execute(plan, srcGen);
+	}
+
+	private boolean execute(GenPlan plan, final SrcGenerator gen) {
+		if (opts.flagCreate()) {
+			for (String dir : plan.getDirs()) {
+				Log.debug(this, "Making: " + dir);
 				try {
-					FileUtils.copyFileToDirectory(new File(srcbinary), new File(destdir));
+					config.getSink().createDirs(dir);
 				} catch (IOException e) {
-					Log.error(this, "Binary element copy failed.", e);
+					Log.error(this, "Failed to make directory for " + dir, e);
+					return false;
 				}
-				continue;
 			}
+			Log.info(this, "Directory structure created/validated");
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (final GenPlan.Job job : plan.getJobs()) {
+			tasks.add(new Callable<Void>() {
 
-			// transform and render everything else
-			srcGen.dispatch(unit);
+				@Override
+				public Void call() throws IOException {
+					if (job.kind == GenPlan.Kind.copy) {
+						config.getSink().copy(new File(job.source), job.target);
+					} else {
+						gen.render(job.ctx, job.target);
+					}
+					return null;
+				}
+			});
 		}
-		Log.info(this, "Done");
-		return true;
+
+		int failed = 0;
+		try {
+			List<Future<Void>> results = ioPool.invokeAll(tasks);
+			for (int idx = 0; idx < results.size(); idx++) {
+				try {
+					results.get(idx).get();
+				} catch (ExecutionException e) {
+					GenPlan.Job job = plan.getJobs().get(idx);
+					if (job.kind == GenPlan.Kind.copy) {
+						Log.error(this, "Binary element copy failed: " + job.source, e.getCause());
+					} else {
+						Log.error(this, "Problem generating unit: " + job.ctx, e.getCause());
+					}
+					failed++;
+				}
+			}
+		} catch (InterruptedException e) {
+			Log.error(this, "Interrupted executing the generation plan", e);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		if (failed > 0) Log.error(this, failed + " of " + tasks.size() + " generation jobs failed");
+		return failed == 0;
 	}
 }
@@ -0,0 +1,25 @@
+package net.certiv.antlr.project.gen;
+
+import net.certiv.antlr.project.regen.spec.Unit;
+
+/**
+ * Immutable state for a single render of a primary unit. Descriptor units are rendered once per
+ * parser context, each with its own render context, allowing the renders to proceed independently.
+ */
+public class RenderContext {
+
+	public final Unit unit;				// the primary unit being rendered
+	public final String contextName;	// parser context name for descriptors; null otherwise
+
+	public RenderContext(Unit unit, String contextName) {
+		super();
+		this.unit = unit;
+		this.contextName = contextName;
+	}
+
+	@Override
+	public String toString() {
+		if (contextName == null) return unit.unitName;
+		return unit.unitName + "[" + contextName + "]";
+	}
+}
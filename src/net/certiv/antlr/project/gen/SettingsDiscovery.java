@@ -0,0 +1,133 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+import net.certiv.antlr.project.gen.spec.SettingsIndex;
+import net.certiv.antlr.project.util.Log;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Identifies the settings files among the json files of a directory. A file is identified by
+ * streaming just far enough into it to read its top-level <code>magicId</code> field, rather than
+ * by a full parse. The outcome for each file is kept in an index file in the same directory, keyed
+ * by filename, modification time, and length, so that later runs need open only the settings file
+ * itself.
+ */
+public class SettingsDiscovery {
+
+	static final String indexFilename = "GenSettingsIndex.json";
+	private static final String magicIdIndex = "GenSettingsIndex451";
+	private static final String magicIdField = "magicId";
+
+	private final GenConfig config;
+	private final File dir;
+	private final String magicId;
+	private SettingsIndex index;
+	private boolean dirty;
+
+	/**
+	 * @param config
+	 *            the configuration used to read and write the index
+	 * @param dir
+	 *            the directory searched
+	 * @param magicId
+	 *            the magicId identifying a settings file
+	 */
+	public SettingsDiscovery(GenConfig config, File dir, String magicId) {
+		super();
+		this.config = config;
+		this.dir = dir;
+		this.magicId = magicId;
+		load();
+	}
+
+	/** Returns true if the given file of the searched directory is a candidate settings file */
+	public boolean matches(File file) {
+		if (file.getName().equals(indexFilename)) return false;
+		SettingsIndex.Entry entry = index.files.get(file.getName());
+		if (entry != null && entry.modified == file.lastModified() && entry.length == file.length()) {
+			return entry.settings;
+		}
+		entry = new SettingsIndex.Entry();
+		entry.modified = file.lastModified();
+		entry.length = file.length();
+		entry.settings = magicId.equals(sniff(file));
+		index.files.put(file.getName(), entry);
+		dirty = true;
+		return entry.settings;
+	}
+
+	/** Persists the index where changed; entries of files no longer present are dropped */
+	public void save() {
+		for (Iterator<String> it = index.files.keySet().iterator(); it.hasNext();) {
+			if (!new File(dir, it.next()).isFile()) {
+				it.remove();
+				dirty = true;
+			}
+		}
+		if (!dirty) return;
+		SettingsIndex sorted = new SettingsIndex();
+		sorted.magicId = index.magicId;
+		sorted.files = new TreeMap<>(index.files);
+		try {
+			config.saveObj2Json(getPathname(), sorted);
+			dirty = false;
+		} catch (IOException e) {
+			Log.warn(this, "Failed to save settings index; next run will examine all json files");
+		}
+	}
+
+	public String getPathname() {
+		return new File(dir, indexFilename).getPath();
+	}
+
+	/**
+	 * Returns the value of the top-level magicId field of the given json file; null if the file is
+	 * not a json object, has no such field, or cannot be read. Reading stops at the field.
+	 */
+	static String sniff(File file) {
+		try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(file),
+				StandardCharsets.UTF_8)))) {
+			reader.setLenient(true);
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) return null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (reader.nextName().equals(magicIdField)) {
+					return reader.peek() == JsonToken.STRING ? reader.nextString() : null;
+				}
+				reader.skipValue();
+			}
+		} catch (IOException | IllegalStateException | NumberFormatException e) {
+			Log.debug(SettingsDiscovery.class, "Not a json object: " + file.getPath() + " [" + e.getMessage() + "]");
+		}
+		return null;
+	}
+
+	private void load() {
+		index = new SettingsIndex();
+		index.magicId = magicIdIndex;
+		index.files = new HashMap<>();
+		String pathname = getPathname();
+		if (!new File(pathname).isFile()) return;
+		try {
+			SettingsIndex prior = (SettingsIndex) config.readJsonFile(pathname, SettingsIndex.class);
+			if (!magicIdIndex.equals(prior.magicId) || prior.files == null) {
+				throw new IOException("Wrong magicId - not a valid settings index: " + pathname);
+			}
+			index.files.putAll(prior.files);
+		} catch (IOException | JsonSyntaxException e) {
+			Log.debug(this, "Ignoring settings index: " + pathname + " [" + e.getMessage() + "]");
+		}
+	}
+}
@@ -1,26 +1,36 @@
 package net.certiv.antlr.project.gen;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import net.certiv.antlr.project.base.ConfigBase.OutputWriter;
 import net.certiv.antlr.project.regen.spec.Unit;
 import net.certiv.antlr.project.regen.spec.Variable;
 import net.certiv.antlr.project.util.Log;
 import net.certiv.antlr.project.util.Reflect;
 import net.certiv.antlr.project.util.Strings;
 
+import org.stringtemplate.v4.AutoIndentWriter;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
-import org.stringtemplate.v4.STGroupFile;
 
 public class SrcGenerator {
 
+	private static final String contextNameVar = "contextName";
+
+	// alias tables depend only on the configuration class; shared by generators, read-only once built
+	private static final Map<Class<?>, HashMap<String, String>> aliasCache = new ConcurrentHashMap<>();
+
 	private GenConfig config;
-	private List<String> builtins;
 	private HashMap<String, String> aliases;
+	private Map<String, Binding> bindings;
+	private GenManifest manifest;
 	private boolean overwrite;
+	private boolean streaming;	// true => render directly to the output file
 
 	public SrcGenerator(GenConfig config, boolean overwrite) {
 		super();
@@ -30,10 +40,20 @@ public class SrcGenerator {
 	}
 
 	private void init() {
-		aliases = new HashMap<String, String>();
-		builtins = Reflect.getMethodNames(config, "get");
-		for (String name : builtins) {
-			aliases.putAll(permute(name));
+		aliases = aliasCache.get(config.getClass());
+		if (aliases == null) {
+			GenProfile.Span span = GenProfile.begin("aliases.build");
+			aliases = new HashMap<String, String>();
+			List<String> builtins = Reflect.getMethodNames(config, "get");
+			// 'getGen' accessors are applied last so they deterministically win any alias collisions
+			for (String name : builtins) {
+				if (!name.startsWith("getGen")) aliases.putAll(permute(name));
+			}
+			for (String name : builtins) {
+				if (name.startsWith("getGen")) aliases.putAll(permute(name));
+			}
+			aliasCache.put(config.getClass(), aliases);
+			GenProfile.end(span);
 		}
 	}
 
@@ -53,69 +73,199 @@ public class SrcGenerator {
 		return p;
 	}
 
+	/**
+	 * Compiles the alias table into a table of bound accessors for every template variable
+	 * referenced by the units of the rule set. Must be called once the rule set is loaded, and again
+	 * whenever it is reloaded, before any rendering; unknown variables are reported here rather than
+	 * at render time.
+	 * 
+	 * @throws IOException
+	 *             if any referenced variable cannot be bound
+	 */
+	public void bind() throws IOException {
+		GenProfile.Span span = GenProfile.begin("variables.bind");
+		Map<String, Binding> table = new HashMap<>();
+		for (Unit unit : config.getUnits().values()) {
+			bindUnit(table, unit);
+		}
+		// the compact descriptor table is not a rule set unit; its variables are bound by name
+		if (config.isCompact() && config.compactUnit() != null) {
+			for (String vname : config.compactVars()) {
+				if (!table.containsKey(vname)) bind(table, vname, vname);
+			}
+		}
+		bindings = table;
+		GenProfile.end(span);
+		Log.debug(this, "Bound " + bindings.size() + " template variables");
+	}
+
+	/**
+	 * Binds only the template variables referenced by the given primary unit and by the parts it
+	 * collects, for a render of that unit alone.
+	 * 
+	 * @throws IOException
+	 *             if any referenced variable cannot be bound
+	 */
+	public void bind(Unit unit) throws IOException {
+		Map<String, Binding> table = new HashMap<>();
+		bindParts(table, unit);
+		bindings = table;
+		Log.debug(this, "Bound " + bindings.size() + " template variables");
+	}
+
+	// follows the parts of a unit as collected for rendering
+	private void bindParts(Map<String, Binding> table, Unit unit) throws IOException {
+		bindUnit(table, unit);
+		if (unit.literal) return;
+		for (String part : unit.parts) {
+			bindParts(table, config.getRuleSet().units.get(part));
+		}
+	}
+
+	private void bindUnit(Map<String, Binding> table, Unit unit) throws IOException {
+		for (String vname : unit.templateVars) {
+			if (table.containsKey(vname)) continue;
+			Variable var = config.getVariable(vname);
+			if (var == null) throw new IOException("Unknown variable spec: " + vname + " in unit " + unit.unitName);
+			bind(table, vname, var.variable);
+		}
+	}
+
+	private void bind(Map<String, Binding> table, String vname, String alias) throws IOException {
+		// the context name is that of the render, rather than a configuration value
+		if (contextNameVar.equals(alias)) {
+			table.put(vname, Binding.contextName(vname));
+			return;
+		}
+		String methodName = aliases.get(alias);
+		if (methodName == null) throw new IOException("Unknown variable name: " + vname + " ==> " + alias);
+		table.put(vname, Binding.create(config, vname, methodName));
+	}
+
+	/**
+	 * Selects rendering directly to a buffered output file, rather than through an intermediate
+	 * string. The file content and encoding are the same either way.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Sets the manifest used to skip rendering of units whose inputs are unchanged; null renders
+	 * all units.
+	 */
+	public void setManifest(GenManifest manifest) {
+		this.manifest = manifest;
+	}
+
 	// ///////////////////////////////////////////////////////////////////////////
 
 	/**
-	 * Renders the given primary unit to the file identified by the unit
+	 * Renders a single primary unit, or a single context of a descriptor unit, to the given output
+	 * pathname. Template variables must already be bound. When profiling, the collect, render, and
+	 * write times of the unit are recorded; streamed rendering is recorded entirely as render time.
 	 * 
-	 * @param unit
-	 *            the unit to render
+	 * @param ctx
+	 *            the unit and context to render
+	 * @param out
+	 *            the output pathname
+	 * @throws IOException
 	 */
-	public void dispatch(Unit unit) {
-		try {
-			switch (unit.unitType) {
-				case descriptor:
-					for (String cName : config.getContextMethods().keySet()) {
-						config.setCurrentContextName(cName);
-						generate(unit, cName);
-					}
-					break;
-				default:
-					config.setCurrentContextName(null);
-					generate(unit, null);
+	public void render(RenderContext ctx, String out) throws IOException {
+		long alloc = GenProfile.allocated();
+		long beg = System.nanoTime();
+		List<Part> parts = new ArrayList<>();
+		collect(ctx.unit, parts, ctx);
+
+		String fingerprint = null;
+		if (manifest != null) {
+			fingerprint = manifest.fingerprint(parts);
+			if (manifest.isCurrent(out, fingerprint)) {
+				manifest.skipped(out);
+				GenProfile.unit(ctx, out, true, System.nanoTime() - beg, 0, 0, 0, GenProfile.allocated() - alloc);
+				return;
 			}
-		} catch (IOException e) {
-			Log.error(this, "Problem generating unit: " + unit.unitName, e);
 		}
-	}
+		long collected = System.nanoTime();
 
-	private void generate(Unit unit, String cName) throws IOException {
-		String out = config.getGenPathname(unit);
 		Log.info(this, "Generating project file: " + out);
-		StringBuilder content = new StringBuilder();
-		generate(unit, content, cName);
-		config.writeFile(out, content.toString(), overwrite);
+		boolean written;
+		long chars = 0;
+		long rendered;
+		if (streaming) {
+			written = stream(out, parts);
+			rendered = System.nanoTime();
+		} else {
+			StringBuilder content = new StringBuilder();
+			for (Part part : parts) {
+				String tmpl = config.getTemplatePathname(part.unit.templateGroup);
+				content.append(create(tmpl, part.unit.unitName, part.varMap));
+			}
+			chars = content.length();
+			rendered = System.nanoTime();
+			written = config.writeFile(out, content.toString(), overwrite);
+		}
+		long end = System.nanoTime();
+		GenProfile.unit(ctx, out, false, collected - beg, rendered - collected, end - rendered, chars,
+				GenProfile.allocated() - alloc);
+		if (written && manifest != null) {
+			manifest.update(out, fingerprint);
+		}
+	}
+
+	/*
+	 * Renders the parts, in order, directly to the output file. If rendering fails, the output is
+	 * discarded: a file created by the render is removed, and an existing file is left untouched.
+	 */
+	private boolean stream(String out, List<Part> parts) throws IOException {
+		OutputWriter writer = config.openFile(out, overwrite);
+		if (writer == null) return false;
+		boolean ok = false;
+		try {
+			for (Part part : parts) {
+				String tmpl = config.getTemplatePathname(part.unit.templateGroup);
+				ST st = instance(tmpl, part.unit.unitName, part.varMap);
+				// a fresh auto-indent writer per part matches the behavior of ST.render()
+				if (st != null) st.write(new AutoIndentWriter(writer));
+			}
+			ok = true;
+		} finally {
+			if (ok) {
+				writer.close();
+			} else {
+				writer.discard();
+			}
+		}
+		return true;
 	}
 
 	/**
-	 * Recursive content generator. Generates all parts in order starting with a given primary unit.
+	 * Recursive part collector. Collects all parts in render order, starting with a given primary
+	 * unit, together with the resolved values of their template variables.
 	 * 
 	 * @param unit
-	 *            the unit to render
-	 * @param content
-	 *            accumulator for rendered templates
+	 *            the unit to collect
+	 * @param parts
+	 *            accumulator for the collected parts
+	 * @param ctx
+	 *            the render context of the primary unit
 	 * @throws IOException
 	 */
-	private void generate(Unit unit, StringBuilder content, String cName) throws IOException {
-		String tmpl = config.getTemplatePathname(unit.templateGroup);
+	private void collect(Unit unit, List<Part> parts, RenderContext ctx) throws IOException {
 		Map<String, Object> varMap = new HashMap<>();
 		for (String vname : unit.templateVars) {
-			Variable var = config.getVariables().get(vname);
-			String methodName = aliases.get(var.variable);
-			if (methodName == null) throw new IOException("Unknown variable name: " + vname + " ==> " + var.variable);
-			Object value = Reflect.invoke(true, config, methodName);
-			if (value == null && cName != null) value = Reflect.invoke(true, config, methodName, cName);
-			if (value == null) throw new IOException("Null variable value: " + vname + " ==> " + var.variable);
+			Object value = bindings.get(vname).valueOf(ctx.contextName);
+			if (value == null) throw new IOException("Null variable value: " + vname);
 			varMap.put(vname, value);
 		}
-		content.append(create(tmpl, unit.unitName, varMap));
+		parts.add(new Part(unit, varMap));
 
 		if (unit.parts.size() == 0) return;
 		// do not generate parts referenced from a literal unit
 		if (unit.literal) return;
 		for (String part : unit.parts) {
 			Unit pUnit = config.getRuleSet().units.get(part);
-			generate(pUnit, content, cName);
+			collect(pUnit, parts, ctx);
 		}
 	}
 
@@ -134,12 +284,22 @@ public class SrcGenerator {
 	private String create(String t_pathname, String uname, Map<String, Object> varMap)
 			throws IOException {
 
+		ST st = instance(t_pathname, uname, varMap);
+		if (st == null) return "";
+		return st.render();
+	}
+
+	/**
+	 * Returns a template instance with all attributes added, or null if the instance cannot be
+	 * rendered
+	 */
+	private ST instance(String t_pathname, String uname, Map<String, Object> varMap) throws IOException {
 		boolean err = false;
-		STGroup group = new STGroupFile(t_pathname);
+		STGroup group = TemplateCache.fetch(t_pathname);
 		ST st = group.getInstanceOf(uname);
 		if (st == null) {
 			Log.error(this, "Failed to find template: " + uname);
-			return "";
+			return null;
 		}
 		for (String varName : varMap.keySet()) {
 			try {
@@ -151,8 +311,20 @@ public class SrcGenerator {
 		}
 		if (err) {
 			Log.warn(this, "Skipping rendering of " + uname);
-			return "";
+			return null;
+		}
+		return st;
+	}
+
+	/** A unit to be rendered together with the values of its template variables */
+	static class Part {
+
+		final Unit unit;
+		final Map<String, Object> varMap;
+
+		Part(Unit unit, Map<String, Object> varMap) {
+			this.unit = unit;
+			this.varMap = varMap;
 		}
-		return st.render();
 	}
 }
@@ -0,0 +1,186 @@
+package net.certiv.antlr.project.gen;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.certiv.antlr.project.util.Log;
+
+import org.stringtemplate.v4.ModelAdaptor;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupFile;
+
+/**
+ * Process-wide cache of compiled template groups. Groups are keyed by canonical pathname and are
+ * reloaded whenever the modification time of the group file, or of any group file it imports,
+ * changes. A cached group may be rendered concurrently: it is fully compiled when loaded, and its
+ * attribute adaptor lookups are synchronized.
+ */
+public class TemplateCache {
+
+	private static final Map<String, Entry> groups = new ConcurrentHashMap<>();
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong reloads = new AtomicLong();
+	private static final AtomicLong loadNanos = new AtomicLong();
+
+	private TemplateCache() {}
+
+	/**
+	 * Returns the compiled group for the given group file pathname, loading (or reloading) the
+	 * group as necessary.
+	 *
+	 * @param t_pathname
+	 *            template group pathname
+	 * @return the fully loaded template group
+	 * @throws IOException
+	 */
+	public static STGroup fetch(String t_pathname) throws IOException {
+		String key = new File(t_pathname).getCanonicalPath();
+		Entry entry = groups.get(key);
+		if (entry != null && entry.isCurrent()) {
+			hits.incrementAndGet();
+			return entry.group;
+		}
+		synchronized (TemplateCache.class) {
+			entry = groups.get(key);
+			if (entry != null && entry.isCurrent()) {
+				hits.incrementAndGet();
+				return entry.group;
+			}
+			if (entry == null) {
+				misses.incrementAndGet();
+			} else {
+				reloads.incrementAndGet();
+				Log.debug(TemplateCache.class, "Reloading modified template group: " + key);
+			}
+			entry = load(key);
+			groups.put(key, entry);
+			return entry.group;
+		}
+	}
+
+	/**
+	 * Returns the canonical pathnames of the given group file and of every group file it imports,
+	 * loading the group as necessary.
+	 *
+	 * @param t_pathname
+	 *            template group pathname
+	 * @return the source file pathnames of the group
+	 * @throws IOException
+	 */
+	public static List<String> sources(String t_pathname) throws IOException {
+		fetch(t_pathname);
+		Entry entry = groups.get(new File(t_pathname).getCanonicalPath());
+		return new ArrayList<>(entry.stamps.keySet());
+	}
+
+	/** Discards all cached groups; counters are retained */
+	public static void clear() {
+		groups.clear();
+	}
+
+	public static long getHits() {
+		return hits.get();
+	}
+
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	public static long getReloads() {
+		return reloads.get();
+	}
+
+	/** Cumulative time spent loading and compiling group files, in milliseconds */
+	public static long getLoadMillis() {
+		return loadNanos.get() / 1000000;
+	}
+
+	public static String report() {
+		return "Template cache: " + groups.size() + " groups, hits=" + getHits() + ", misses=" + getMisses()
+				+ ", reloads=" + getReloads() + ", load time=" + getLoadMillis() + "ms";
+	}
+
+	// ///////////////////////////////////////////////////////////////////////////
+
+	private static Entry load(String key) {
+		long alloc = GenProfile.allocated();
+		long beg = System.nanoTime();
+		STGroupFile group = new SharedGroupFile(key);
+		Entry entry = new Entry(group);
+		entry.stamp(key);
+		// force the group and its imports to be compiled now, so that later lookups are read-only
+		group.load();
+		loadImports(entry, group);
+		long nanos = System.nanoTime() - beg;
+		loadNanos.addAndGet(nanos);
+		GenProfile.template(key, nanos, GenProfile.allocated() - alloc);
+		return entry;
+	}
+
+	private static void loadImports(Entry entry, STGroup group) {
+		for (STGroup imported : group.getImportedGroups()) {
+			imported.load();
+			if (imported instanceof STGroupFile) {
+				STGroupFile gf = (STGroupFile) imported;
+				if (gf.url != null && "file".equals(gf.url.getProtocol())) {
+					try {
+						entry.stamp(new File(gf.url.toURI()).getCanonicalPath());
+					} catch (URISyntaxException | IOException e) {
+						Log.debug(TemplateCache.class, "Cannot track imported group: " + gf.url);
+					}
+				}
+			}
+			loadImports(entry, imported);
+		}
+	}
+
+	/*
+	 * Group file with synchronized model adaptor lookups. The adaptor registry caches the lookup for
+	 * each attribute type on first use, in an unsynchronized map, so concurrent renders of any
+	 * attribute type could otherwise corrupt it. Adaptors are looked up on the group that created
+	 * the template instance, that is, on the cached group, also for templates of its imports.
+	 * Renderers are looked up on the group defining the template; as none are registered, those
+	 * lookups find no registry and write nothing.
+	 */
+	private static class SharedGroupFile extends STGroupFile {
+
+		SharedGroupFile(String fileName) {
+			super(fileName);
+		}
+
+		@Override
+		public synchronized ModelAdaptor getModelAdaptor(Class<?> attributeType) {
+			return super.getModelAdaptor(attributeType);
+		}
+	}
+
+	private static class Entry {
+
+		final STGroup group;
+		final Map<String, Long> stamps = new LinkedHashMap<>();
+
+		Entry(STGroup group) {
+			this.group = group;
+		}
+
+		void stamp(String pathname) {
+			stamps.put(pathname, new File(pathname).lastModified());
+		}
+
+		boolean isCurrent() {
+			for (String pathname : stamps.keySet()) {
+				if (new File(pathname).lastModified() != stamps.get(pathname)) return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package net.certiv.antlr.project.gen.spec;
+
+import java.util.List;
+
+import com.google.gson.annotations.Since;
+
+/**
+ * Minimal class used to marshal a batch generation manifest from a json file. Each project is
+ * described by its settings; at a minimum, the grammar name, package name, and project path.
+ */
+public class Batch {
+
+	@Since(1.0)
+	public String magicId = "<not set>"; // never null
+
+	@Since(1.0)
+	public String rulesPathname; // shared rule set; defaults to the command line rule set
+
+	@Since(1.0)
+	public List<Settings> projects;
+}
@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package net.certiv.antlr.project.gen.spec;
+
+import java.util.Map;
+
+import com.google.gson.annotations.Since;
+
+/**
+ * Minimal class used to marshal the generation manifest to and from a json file.
+ */
+public class Manifest {
+
+	@Since(1.0)
+	public String magicId = "<not set>"; // never null
+
+	@Since(1.0)
+	public Map<String, String> fingerprints; // generated file pathname => input fingerprint
+
+	@Since(1.0)
+	public Map<String, String> outputs; // generated file pathname => hash of the content generated
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package net.certiv.antlr.project.gen.spec;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.annotations.Since;
+
+/**
+ * Minimal class used to marshal a generation run profile to a json file. Times are in
+ * microseconds; allocations are the bytes allocated by the thread performing the work.
+ */
+public class Profile {
+
+	@Since(1.0)
+	public String magicId = "<not set>"; // never null
+
+	@Since(1.0)
+	public String grammarName;
+	@Since(1.0)
+	public long totalMicros;
+	@Since(1.0)
+	public long bytes; // total bytes written to the output sink, including copies
+
+	@Since(1.0)
+	public Map<String, Stage> stages; // stage name => accumulated measures
+	@Since(1.0)
+	public Map<String, Stage> templates; // template group pathname => load measures
+	@Since(1.0)
+	public List<UnitStat> units; // per rendered output file, slowest first
+
+	public static class Stage {
+
+		@Since(1.0)
+		public int count;
+		@Since(1.0)
+		public long micros;
+		@Since(1.0)
+		public long allocBytes;
+	}
+
+	public static class UnitStat {
+
+		@Since(1.0)
+		public String unit; // unit name, with context name for descriptors
+		@Since(1.0)
+		public String pathname;
+		@Since(1.0)
+		public boolean skipped; // unchanged inputs
+		@Since(1.0)
+		public long collectMicros; // template variable resolution
+		@Since(1.0)
+		public long renderMicros; // includes the write when streaming
+		@Since(1.0)
+		public long writeMicros;
+		@Since(1.0)
+		public long chars; // rendered characters; 0 when streaming
+		@Since(1.0)
+		public long bytes; // bytes written to the output sink
+		@Since(1.0)
+		public long allocBytes;
+	}
+}
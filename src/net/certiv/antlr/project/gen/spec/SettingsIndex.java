@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v1.0 which accompanies this distribution,
+ * and is available at http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package net.certiv.antlr.project.gen.spec;
+
+import java.util.Map;
+
+import com.google.gson.annotations.Since;
+
+/**
+ * Minimal class used to marshal the settings discovery index to and from a json file.
+ */
+public class SettingsIndex {
+
+	@Since(1.0)
+	public String magicId = "<not set>"; // never null
+
+	@Since(1.0)
+	public Map<String, Entry> files; // json filename => last examined state
+
+	public static class Entry {
+
+		@Since(1.0)
+		public long modified;
+		@Since(1.0)
+		public long length;
+		@Since(1.0)
+		public boolean settings; // true => the file has the settings magicId
+	}
+}
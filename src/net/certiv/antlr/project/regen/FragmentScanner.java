@@ -0,0 +1,157 @@
+package net.certiv.antlr.project.regen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.certiv.antlr.project.util.AhoCorasick;
+import net.certiv.antlr.project.util.Log;
+import net.certiv.antlr.project.util.Strings;
+
+/**
+ * Splits model file content into its named fragments. Each fragment is delimited by its own
+ * divider. The occurrences of all literal dividers are found together, in a single scan of the
+ * content; a divider holding regex metacharacters is matched as a regex, as before.
+ * <p>
+ * Each fragment is split out exactly as by <code>String.split</code> on its divider: the content
+ * before, between, and after the divider occurrences, less any trailing empty parts.
+ */
+class FragmentScanner {
+
+	private static final String metaChars = "\\[](){}.*+?^$|";
+
+	private final String source;
+	private final String content;
+	private final Map<String, String> dividers;
+	private final Map<String, List<int[]>> found = new HashMap<>(); // name -> {start, end} of each divider
+
+	/**
+	 * @param source
+	 *            pathname of the content, for messages
+	 * @param content
+	 *            the model file content
+	 * @param dividers
+	 *            the divider of each named fragment
+	 */
+	FragmentScanner(String source, String content, Map<String, String> dividers) {
+		super();
+		this.source = source;
+		this.content = content;
+		this.dividers = dividers;
+
+		List<String> names = new ArrayList<>();
+		List<String> literals = new ArrayList<>();
+		for (Map.Entry<String, String> entry : dividers.entrySet()) {
+			if (isLiteral(entry.getValue())) {
+				names.add(entry.getKey());
+				literals.add(entry.getValue());
+			} else {
+				found.put(entry.getKey(), matchRegex(entry.getValue()));
+			}
+		}
+		if (!literals.isEmpty()) matchLiterals(names, literals);
+	}
+
+	/**
+	 * Returns the named fragment: the middle of three parts, the second of two, or the whole of a
+	 * single part.
+	 *
+	 * @param empty
+	 *            true to return null, rather than the whole content, where there is no divider
+	 */
+	String fragment(String name, boolean empty) {
+		List<int[]> at = found.get(name);
+		int parts = countParts(at);
+		switch (parts) {
+			case 1:
+				Log.warn(this, "Found 1 part - no splits [" + source + ": " + name + "]");
+				if (empty) return null;
+				return Strings.trimLead(at.isEmpty() ? content : content.substring(0, at.get(0)[0]));
+			case 2:
+			case 3:
+				if (parts == 2) {
+					Log.debug(this, "Found 2 parts - leading empty string in first part; choosing second");
+				} else {
+					Log.trace(this, "Found 3 parts - standard split; middle part is fragment");
+				}
+				int beg = at.get(0)[1];
+				int end = at.size() > 1 ? at.get(1)[0] : content.length();
+				return Strings.trimLead(content.substring(beg, end));
+			default:
+				Log.error(this, "Found " + parts + " parts; obvious error, returning original content [" + source + ": "
+						+ name + " dividers at lines " + lines(at) + "]");
+				return Strings.trimLead(content);
+		}
+	}
+
+	// the number of parts String.split would return: one more than the dividers, less trailing empties
+	private int countParts(List<int[]> at) {
+		if (at.isEmpty()) return 1;
+		int parts = at.size() + 1;
+		int end = content.length();
+		for (int idx = at.size() - 1; idx >= -1; idx--) {
+			int beg = idx < 0 ? 0 : at.get(idx)[1];
+			if (beg < end) break;
+			parts--;
+			if (idx >= 0) end = at.get(idx)[0];
+		}
+		return parts;
+	}
+
+	// per divider, the leftmost non-overlapping occurrences, from one scan for all dividers
+	private void matchLiterals(List<String> names, List<String> literals) {
+		AhoCorasick matcher = new AhoCorasick(literals);
+		int[] cursor = new int[names.size()];
+		for (String name : names) {
+			found.put(name, new ArrayList<int[]>());
+		}
+		for (int[] match : matcher.find(content)) {
+			int idx = match[1];
+			if (match[0] < cursor[idx]) continue;
+			int end = match[0] + matcher.length(idx);
+			found.get(names.get(idx)).add(new int[] { match[0], end });
+			cursor[idx] = end;
+		}
+	}
+
+	private List<int[]> matchRegex(String divider) {
+		List<int[]> at = new ArrayList<>();
+		Matcher m = Pattern.compile(divider).matcher(content);
+		while (m.find()) {
+			// as by split, a zero-width match at the start yields no leading part
+			if (m.end() == 0) continue;
+			at.add(new int[] { m.start(), m.end() });
+		}
+		return at;
+	}
+
+	private String lines(List<int[]> at) {
+		StringBuilder sb = new StringBuilder();
+		int line = 1;
+		int pos = 0;
+		for (int[] span : at) {
+			for (; pos < span[0]; pos++) {
+				if (content.charAt(pos) == '\n') line++;
+			}
+			if (sb.length() > 0) sb.append(", ");
+			sb.append(line);
+		}
+		return sb.toString();
+	}
+
+	private static boolean isLiteral(String divider) {
+		if (divider.isEmpty()) return false;
+		for (int idx = 0; idx < divider.length(); idx++) {
+			if (metaChars.indexOf(divider.charAt(idx)) >= 0) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return source + " " + dividers.keySet();
+	}
+}
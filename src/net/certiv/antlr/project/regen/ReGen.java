@@ -1,10 +1,22 @@
 package net.certiv.antlr.project.regen;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import net.certiv.antlr.project.base.ConfigBase;
 import net.certiv.antlr.project.base.TypeOf;
@@ -27,6 +39,11 @@ public class ReGen {
 	private static final String DESCRIPTION = "Description";
 	private static final String VERSION = "Version";
 
+	private static final int bufferSize = 64 * 1024;
+	private static final ForkJoinPool pool = new ForkJoinPool();
+
+	private final ConcurrentHashMap<String, Substituter> substituters = new ConcurrentHashMap<>();
+
 	private ReGenConfig config;
 	private File tmpDir = null;
 
@@ -34,6 +51,15 @@ public class ReGen {
 		new ReGen(args);
 	}
 
+	/*
+	 * Creates an instance over an already loaded rule set that writes its template groups to the
+	 * given directory. Package visible for benchmarks.
+	 */
+	ReGen(ReGenConfig config, File tmpDir) {
+		this.config = config;
+		this.tmpDir = tmpDir;
+	}
+
 	public ReGen(String[] args) {
 
 		ReGenOpts opts = new ReGenOpts();
@@ -91,9 +117,19 @@ public class ReGen {
 		// rebuild the templates from the model
 		if (opts.flagRebuild()) {
 			Log.info(this, "Generating templates");
-			boolean ok = processModelToTemplates(units); // build templates in tmp dir
-			Log.debug(this, "Regeneration to tmp dir: " + (ok ? "succeeded." : "failed."));
-			if (ok) {
+			File manifestFile = ReGenManifest.manifestFile(config.getRuleSetPathname());
+			ReGenManifest manifest = opts.flagAll() ? new ReGenManifest() : ReGenManifest.load(manifestFile);
+			Map<String, ReGenManifest.Group> inputs = ReGenManifest.scan(config, units);
+			Map<String, Unit> stale = staleUnits(units, manifest, inputs);
+
+			boolean ok = true;
+			if (stale.isEmpty()) {
+				Log.info(this, "All template groups are current.");
+			} else {
+				ok = processModelToTemplates(stale); // build stale templates in tmp dir
+				Log.debug(this, "Regeneration to tmp dir: " + (ok ? "succeeded." : "failed."));
+			}
+			if (ok && !stale.isEmpty()) {
 				try { // move tmp tmplates to final location
 					String tmplDir = config.getTemplatePath();
 					Log.debug(this, "Moving regenerated files to: " + tmplDir);
@@ -103,6 +139,15 @@ public class ReGen {
 					ok = false;
 				}
 			}
+			if (ok) {
+				try {
+					updateManifest(manifest, inputs, stale);
+					manifest.save(manifestFile);
+				} catch (IOException e) {
+					Log.warn(this, "Failed to save rebuild manifest: " + manifestFile.getPath() + " [" + e.getMessage()
+							+ "]");
+				}
+			}
 			if (ok) {
 				Log.info(this, "Regeneration complete.");
 			} else {
@@ -117,9 +162,11 @@ public class ReGen {
 		int existing = units.size();
 		int pastPrime = 0;
 		int primary = 0;
-		for (Unit u : units.values()) {
+		for (Map.Entry<String, Unit> entry : units.entrySet()) {
+			Unit u = entry.getValue();
 			if (u.primary) pastPrime++;
 			u.primary = false;
+			config.updateUnit(entry.getKey());
 		}
 
 		File[] modelRoots = config.findModelRoots(config.getModelBasePath());
@@ -178,6 +225,7 @@ public class ReGen {
 					&& eUnit.modelRoot.equals(unit.modelRoot)) {
 				// mark as existing physical file
 				eUnit.primary = true;
+				config.updateUnit(unit.unitName);
 				return 1;
 			}
 			unit.unitName += "1";
@@ -189,10 +237,48 @@ public class ReGen {
 		unit.parts = new ArrayList<String>();
 		unit.templateGroup = "Unknown";
 		Log.info(this, "Adding: " + Strings.concat(unit.modelRoot, unit.modelPackage, unit.modelFilename));
-		units.put(unit.unitName, unit);
+		config.putUnit(unit.unitName, unit);
 		return 1;
 	}
 
+	/*
+	 * Returns the converted units of the template groups that are not current, in rule set order.
+	 * Units naming a blank or unknown group are always included, so that the rebuild reports them.
+	 */
+	private Map<String, Unit> staleUnits(Map<String, Unit> units, ReGenManifest manifest,
+			Map<String, ReGenManifest.Group> inputs) {
+		Map<String, Boolean> current = new HashMap<>();
+		for (Map.Entry<String, ReGenManifest.Group> entry : inputs.entrySet()) {
+			String name = entry.getKey();
+			File groupFile = new File(config.getTemplatePathname(name));
+			boolean now = manifest.isCurrent(name, entry.getValue(), groupFile);
+			Log.debug(this, (now ? "Current: " : "Stale: ") + groupFile.getPath());
+			current.put(name, now);
+		}
+
+		Map<String, Unit> stale = new LinkedHashMap<>();
+		for (Map.Entry<String, Unit> entry : units.entrySet()) {
+			Unit unit = entry.getValue();
+			if (!ReGenManifest.converted(unit)) continue;
+			Boolean now = current.get(unit.templateGroup);
+			if (now == null || !now) stale.put(entry.getKey(), unit);
+		}
+		Log.info(this, "Template groups: " + current.size() + " [stale=" + Collections.frequency(current.values(),
+				false) + "]");
+		return stale;
+	}
+
+	// records the inputs of the groups just rebuilt; drops the groups no longer in use
+	private void updateManifest(ReGenManifest manifest, Map<String, ReGenManifest.Group> inputs,
+			Map<String, Unit> rebuilt) throws IOException {
+		for (Unit unit : rebuilt.values()) {
+			String name = unit.templateGroup;
+			if (manifest.groups.get(name) == inputs.get(name)) continue;
+			manifest.rebuilt(name, inputs.get(name), new File(config.getTemplatePathname(name)));
+		}
+		manifest.retain(inputs);
+	}
+
 	private boolean processModelToTemplates(Map<String, Unit> units) {
 		Log.debug(this, "Prep templates directory");
 		try {
@@ -203,130 +289,166 @@ public class ReGen {
 			return false;
 		}
 
+		boolean ok = false;
+		try {
+			ok = processUnits(units);
+		} finally {
+			ok &= closeTemplateGroups();
+		}
+		return ok;
+	}
+
+	/*
+	 * Converts the units on the worker pool, then appends the results to their group files in rule
+	 * set order, so that the group files are identical to those of a serial run. Group files are
+	 * initialized, and results appended, on the calling thread only.
+	 */
+	private boolean processUnits(Map<String, Unit> units) {
+		final List<Unit> work = new ArrayList<>();
+		final List<Template> tmpls = new ArrayList<>();
 		for (String uname : units.keySet()) {
 			Unit unit = units.get(uname);
-			switch (unit.unitType) {
-				case ignore:
-				case binary:
-				case document:
-					continue;
-				default:
-					try {
-						Template tmpl = fetchTemplateGroup(unit);
-						Map<String, String> contents = processUnit(unit, tmpl);
-						storeUnitContent(unit, tmpl, contents);
-					} catch (IOException | IllegalArgumentException e) {
-						Log.error(this, "Failure in processing umit: " + unit.unitName, e);
-						return false;
-					}
+			if (!ReGenManifest.converted(unit)) continue;
+			try {
+				tmpls.add(fetchTemplateGroup(unit));
+				work.add(unit);
+			} catch (IOException | IllegalArgumentException e) {
+				Log.error(this, "Failure in processing umit: " + unit.unitName, e);
+				return false;
+			}
+		}
+
+		List<Future<Map<String, String>>> results = new ArrayList<>();
+		for (int idx = 0; idx < work.size(); idx++) {
+			final Unit unit = work.get(idx);
+			final Template tmpl = tmpls.get(idx);
+			results.add(pool.submit(new Callable<Map<String, String>>() {
+
+				@Override
+				public Map<String, String> call() throws IOException {
+					return processUnit(unit, tmpl);
+				}
+			}));
+		}
+
+		try {
+			for (int idx = 0; idx < work.size(); idx++) {
+				Unit unit = work.get(idx);
+				try {
+					storeUnitContent(unit, tmpls.get(idx), results.get(idx).get());
+				} catch (ExecutionException | IOException e) {
+					Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+					Log.error(this, "Failure in processing umit: " + unit.unitName, cause);
+					return false;
+				}
+			}
+		} catch (InterruptedException e) {
+			Log.error(this, "Interrupted processing the model units", e);
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			for (Future<Map<String, String>> result : results) {
+				result.cancel(true);
 			}
 		}
 		return true;
 	}
 
-	private Map<String, String> processUnit(Unit unit, Template tmpl) throws IOException {
+	/*
+	 * Flushes and closes the writers of the group files opened during the rebuild. Returns false if
+	 * any group file could not be completed.
+	 */
+	boolean closeTemplateGroups() {
+		boolean ok = true;
+		for (Template tmpl : config.getTemplates().values()) {
+			if (tmpl.tmplWriter == null) continue;
+			try {
+				tmpl.tmplWriter.close();
+			} catch (IOException e) {
+				Log.error(this, "Failed to complete template group: " + tmpl.tmpPathname, e);
+				ok = false;
+			}
+			tmpl.tmplWriter = null;
+		}
+		return ok;
+	}
+
+	Map<String, String> processUnit(Unit unit, Template tmpl) throws IOException {
 		unit.m_pathname = config.getUnitPathname(unit);
 		Log.debug(this, "Accessing: " + unit.m_pathname);
 
 		Map<String, String> fragments = fetchFragments(unit, tmpl);
 		boolean natural = fragments.get(CONTENT).length() > 0 && unit.templateVars.size() > 0;
 		if (natural || unit.literal) {
-			String content = fragments.get(CONTENT);
-
-			// add a level of excapes to existing escapes; will be reversed by ST
-			content = content.replace("\\", "\\\\");
-			// escape close braces to prevent interference with anon templates
-			content = content.replace("}", "\\}");
-			// escape native delimiter characters
-			content = content.replace(tmpl.lDelim, "\\" + tmpl.lDelim);
-			if (!tmpl.lDelim.equals(tmpl.rDelim)) {
-				content = content.replace(tmpl.rDelim, "\\" + tmpl.rDelim);
-			}
-			// escape double right angles to avoid confusion with template terminal
-			content = content.replace(">>", "\\>>");
-
+			String content = Substituter.escape(fragments.get(CONTENT), tmpl.lDelim, tmpl.rDelim);
 			if (unit.literal) {
 				content += tmpl.lDelim + unit.unitName + "(";
 				content += Strings.toCsv(unit.templateVars);
 				content += ")" + tmpl.rDelim;
 			} else {
 				// convert key text to template var names
-				for (String var : unit.templateVars) {
-					Variable vSpec = config.getVariable(var);
-					vSpec.varText = tmpl.lDelim + vSpec.variable + tmpl.rDelim;
-
-					if (vSpec.replace != null) {
-						vSpec.replacement = vSpec.replace.replace(vSpec.marker, vSpec.varText);
-					} else {
-						vSpec.replacement = vSpec.varText;
-					}
-
-					String search = vSpec.search.replace("\\", "\\\\");
-					switch (vSpec.vType) {
-						case MatchVar:
-						case MatchVarList:
-							content = content.replace(search, vSpec.replacement);
-							break;
-						case RegexVar:
-						case RegexVarList:
-							content = content.replaceAll(search, vSpec.replacement);
-							break;
-					}
-
-					// %nameList:
-					// {name|import %packageName%.parser.gen.%modelGrammar%Parser.%name%Context; }%
-					switch (vSpec.vType) {
-						case MatchVarList:
-						case RegexVarList:
-							String listPrefix = tmpl.lDelim + vSpec.variable + "List:{ " + vSpec.variable + " | ";
-							String listSuffix = " }" + tmpl.rDelim;
-							content = listPrefix + content + listSuffix;
-							break;
-						default:
-					}
-				}
+				content = substituter(unit, tmpl).apply(content);
 			}
 			fragments.put(CONTENT, content);
 		}
 		return fragments;
 	}
 
+	/*
+	 * Returns the compiled conversion of the variables of the given unit under the delimiters of the
+	 * given template group. Compiled once for each distinct variable list and delimiter pair.
+	 */
+	private Substituter substituter(Unit unit, Template tmpl) {
+		String key = tmpl.lDelim + tmpl.rDelim + ":" + Strings.toCsv(unit.templateVars);
+		Substituter sub = substituters.get(key);
+		if (sub == null) {
+			List<Variable> vars = new ArrayList<>();
+			for (String var : unit.templateVars) {
+				vars.add(config.getVariable(var));
+			}
+			sub = new Substituter(vars, tmpl.lDelim, tmpl.rDelim);
+			Substituter prior = substituters.putIfAbsent(key, sub);
+			if (prior != null) sub = prior;
+		}
+		return sub;
+	}
+
 	private void storeUnitContent(Unit unit, Template tmpl, Map<String, String> contents) throws IOException {
 		boolean seconds = writeSecondaryContent(unit, tmpl, contents);
 		seconds |= unit.license != null;
 
 		String vars = Strings.toCsv(unit.templateVars);
-		writeBlankLine(tmpl.tmplFile);
+		writeBlankLine(tmpl);
 		String uname = unit.unitName + (unit.literal ? "Literal" : "");
-		writeLine(tmpl.tmplFile, uname + "(" + vars + ") ::= <<");
+		writeLine(tmpl, uname + "(" + vars + ") ::= <<");
 		if (seconds) {
-			writeLine(tmpl.tmplFile, tmpl.lDelim + "hdrBeg()" + tmpl.rDelim);
+			writeLine(tmpl, tmpl.lDelim + "hdrBeg()" + tmpl.rDelim);
 			if (unit.copyright && contents.get(COPYRIGHT) != null) {
-				writeLine(tmpl.tmplFile, tmpl.lDelim + unit.unitName + COPYRIGHT + "()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + unit.unitName + COPYRIGHT + "()" + tmpl.rDelim);
 			}
 			if (unit.license != null) {
-				writeLine(tmpl.tmplFile, tmpl.lDelim + unit.license + "()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + unit.license + "()" + tmpl.rDelim);
 			}
 			if (unit.contributor && contents.get(CONTRIBUTOR) != null) {
-				writeLine(tmpl.tmplFile, tmpl.lDelim + "hdrBlankLn()" + tmpl.rDelim);
-				writeLine(tmpl.tmplFile, tmpl.lDelim + "hdrContribPrefix()" + tmpl.rDelim);
-				writeLine(tmpl.tmplFile, tmpl.lDelim + unit.unitName + CONTRIBUTOR + "()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + "hdrBlankLn()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + "hdrContribPrefix()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + unit.unitName + CONTRIBUTOR + "()" + tmpl.rDelim);
 			}
 			if (unit.description && contents.get(DESCRIPTION) != null) {
-				writeLine(tmpl.tmplFile, tmpl.lDelim + "hdrBlankLn()" + tmpl.rDelim);
-				writeLine(tmpl.tmplFile, tmpl.lDelim + unit.unitName + DESCRIPTION + "()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + "hdrBlankLn()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + unit.unitName + DESCRIPTION + "()" + tmpl.rDelim);
 			}
 			if (unit.version && contents.get(VERSION) != null) {
-				writeLine(tmpl.tmplFile, tmpl.lDelim + "hdrBlankLn()" + tmpl.rDelim);
-				writeLine(tmpl.tmplFile, tmpl.lDelim + "hdrVersionPrefix()" + tmpl.rDelim);
-				writeLine(tmpl.tmplFile, tmpl.lDelim + unit.unitName + VERSION + "()" + tmpl.rDelim);
-				writeLine(tmpl.tmplFile, tmpl.lDelim + "hdrBlankLn()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + "hdrBlankLn()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + "hdrVersionPrefix()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + unit.unitName + VERSION + "()" + tmpl.rDelim);
+				writeLine(tmpl, tmpl.lDelim + "hdrBlankLn()" + tmpl.rDelim);
 			}
-			writeLine(tmpl.tmplFile, tmpl.lDelim + "hdrEnd()" + tmpl.rDelim);
+			writeLine(tmpl, tmpl.lDelim + "hdrEnd()" + tmpl.rDelim);
 		}
 
-		writeLine(tmpl.tmplFile, contents.get(CONTENT));
-		writeLine(tmpl.tmplFile, ">>");
+		writeLine(tmpl, contents.get(CONTENT));
+		writeLine(tmpl, ">>");
 	}
 
 	private boolean writeSecondaryContent(Unit unit, Template tmpl, Map<String, String> contents) throws IOException {
@@ -351,10 +473,10 @@ public class ReGen {
 	}
 
 	private void writeFragment(String base, String name, Template tmpl, String content) throws IOException {
-		writeBlankLine(tmpl.tmplFile);
-		writeLine(tmpl.tmplFile, base + name + "() ::= <<");
-		writeLine(tmpl.tmplFile, content);
-		writeLine(tmpl.tmplFile, ">>");
+		writeBlankLine(tmpl);
+		writeLine(tmpl, base + name + "() ::= <<");
+		writeLine(tmpl, content);
+		writeLine(tmpl, ">>");
 	}
 
 	private Map<String, String> fetchFragments(Unit unit, Template tmpl) throws IOException {
@@ -371,57 +493,29 @@ public class ReGen {
 		if (tmpl.divider == null) {
 			fragments.put(CONTENT, content);
 		} else {
-			String divider = tmpl.divider.replace(tmpl.marker, unit.unitName);
-			String contentPart = split(content, divider, false);
-			fragments.put(CONTENT, contentPart);
-			if (unit.copyright) {
-				divider = tmpl.divider.replace(tmpl.marker, COPYRIGHT);
-				String cpr = " " + split(content, divider, true);
-				fragments.put(COPYRIGHT, cpr);
-			}
-			if (unit.contributor) {
-				divider = tmpl.divider.replace(tmpl.marker, CONTRIBUTOR);
-				String ctbr = " " + split(content, divider, true);
-				fragments.put(CONTRIBUTOR, ctbr);
-			}
-			if (unit.description) {
-				divider = tmpl.divider.replace(tmpl.marker, DESCRIPTION);
-				String desc = " " + split(content, divider, true);
-				fragments.put(DESCRIPTION, desc);
-			}
-			if (unit.version) {
-				divider = tmpl.divider.replace(tmpl.marker, VERSION);
-				String ver = " " + split(content, divider, true);
-				fragments.put(VERSION, ver);
-			}
+			Map<String, String> dividers = new HashMap<>();
+			dividers.put(CONTENT, tmpl.divider.replace(tmpl.marker, unit.unitName));
+			if (unit.copyright) dividers.put(COPYRIGHT, tmpl.divider.replace(tmpl.marker, COPYRIGHT));
+			if (unit.contributor) dividers.put(CONTRIBUTOR, tmpl.divider.replace(tmpl.marker, CONTRIBUTOR));
+			if (unit.description) dividers.put(DESCRIPTION, tmpl.divider.replace(tmpl.marker, DESCRIPTION));
+			if (unit.version) dividers.put(VERSION, tmpl.divider.replace(tmpl.marker, VERSION));
+
+			// all dividers are located in one scan of the content
+			FragmentScanner scanner = new FragmentScanner(unit.m_pathname, content, dividers);
+			fragments.put(CONTENT, scanner.fragment(CONTENT, false));
+			if (unit.copyright) fragments.put(COPYRIGHT, " " + scanner.fragment(COPYRIGHT, true));
+			if (unit.contributor) fragments.put(CONTRIBUTOR, " " + scanner.fragment(CONTRIBUTOR, true));
+			if (unit.description) fragments.put(DESCRIPTION, " " + scanner.fragment(DESCRIPTION, true));
+			if (unit.version) fragments.put(VERSION, " " + scanner.fragment(VERSION, true));
 		}
 		return fragments;
 	}
 
-	private String split(String content, String divider, boolean empty) {
-		String[] parts = content.split(divider);
-		switch (parts.length) {
-			case 1:
-				Log.warn(this, "Found 1 part - no splits");
-				if (empty) return null;
-				return Strings.trimLead(parts[0]);
-			case 2:
-				Log.debug(this, "Found 2 parts - leading empty string in first part; choosing second");
-				return Strings.trimLead(parts[1]);
-			case 3:
-				Log.trace(this, "Found 3 parts - standard split; middle part is fragment");
-				return Strings.trimLead(parts[1]);
-			default:
-				Log.error(this, "Found " + parts.length + " parts; obvious error, returning original content");
-				return Strings.trimLead(content);
-		}
-	}
-
 	/*
 	 * Retrieve template spec referenced by the given unit. Create the group file, initialize it, &
 	 * keep File reference in the template spec.
 	 */
-	private Template fetchTemplateGroup(Unit unit) throws IOException, IllegalArgumentException {
+	Template fetchTemplateGroup(Unit unit) throws IOException, IllegalArgumentException {
 		String group = unit.templateGroup;
 		if (group == null || group.length() == 0) {
 			throw new IllegalArgumentException("Blank template group \"" + group + "\" for unit " + unit.unitName);
@@ -435,6 +529,8 @@ public class ReGen {
 			tmpl.tmpPathname = config.getTmpTmplPathName(tmpDir, tmpl.name);
 			Log.info(this, "Initializing: " + tmpl.tmpPathname);
 			tmpl.tmplFile = new File(tmpl.tmpPathname);
+			tmpl.tmplWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpl.tmplFile),
+					Charset.defaultCharset()), bufferSize);
 
 			if (tmpl.delimiter != null) writeStgDelimiterStmt(tmpl);
 			if (tmpl.imports != null) writeStgImportsStmt(tmpl);
@@ -453,7 +549,7 @@ public class ReGen {
 				tmpl.rDelim = tmpl.delimiter.substring(1);
 				break;
 		}
-		writeLine(tmpl.tmplFile, "delimiters \"" + tmpl.lDelim + "\", \"" + tmpl.rDelim + "\"");
+		writeLine(tmpl, "delimiters \"" + tmpl.lDelim + "\", \"" + tmpl.rDelim + "\"");
 		Log.debug(this, "Delimiters: " + tmpl.delimiter + " ==> " + tmpl.lDelim + ", " + tmpl.rDelim);
 
 	}
@@ -462,16 +558,18 @@ public class ReGen {
 		for (String name : tmpl.imports) {
 			name = FilenameUtils.concat(config.getTemplatePath(), name);
 			name = Strings.setExtension(name, ConfigBase.templateGroupExt);
-			writeLine(tmpl.tmplFile, "import \"" + name + "\"");
+			writeLine(tmpl, "import \"" + name + "\"");
 			Log.debug(this, "Importing: " + name);
 		}
 	}
 
-	private void writeBlankLine(File file) throws IOException {
-		writeLine(file, "");
+	private void writeBlankLine(Template tmpl) throws IOException {
+		writeLine(tmpl, "");
 	}
 
-	private void writeLine(File file, String content) throws IOException {
-		FileUtils.writeStringToFile(file, content + Strings.eol, true);
+	// appends to the group file through its writer, held open until the rebuild completes
+	private void writeLine(Template tmpl, String content) throws IOException {
+		tmpl.tmplWriter.write(content);
+		tmpl.tmplWriter.write(Strings.eol);
 	}
 }
@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -65,6 +67,7 @@ public class ReGenConfig extends ConfigBase {
 	public ReGenConfig(ReGenOpts opts) {
 		super(opts.filepath() + "/" + opts.filename());
 		this.opts = opts;
+		setSnapshot(opts.flagSnapshot());
 	}
 
 	// ==========================================================================================================
@@ -268,13 +271,13 @@ public class ReGenConfig extends ConfigBase {
 	}
 
 	// set of helpful accumulators
-	List<String> u_pnames = new ArrayList<>(); // unique list of unit parts
-	List<String> u_vnames = new ArrayList<>();
-	List<String> u_tnames = new ArrayList<>();
+	Set<String> u_pnames = new LinkedHashSet<>(); // unique set of unit parts
+	Set<String> u_vnames = new LinkedHashSet<>();
+	Set<String> u_tnames = new LinkedHashSet<>();
 
 	public boolean verifyUnits() {
 		Log.info(this, "Checking unit specifications");
-		List<String> unitNames = new ArrayList<>();
+		Set<String> unitNames = new HashSet<>();
 		Map<String, Unit> units = getUnits();
 		boolean ok = true;
 		for (String mname : units.keySet()) { // set keys must be unique
@@ -301,7 +304,7 @@ public class ReGenConfig extends ConfigBase {
 
 	public boolean verifyVariables() {
 		Log.info(this, "Checking variable specifications");
-		List<String> varNames = new ArrayList<>();
+		Set<String> varNames = new HashSet<>();
 		boolean ok = true;
 		for (String vname : getVariables().keySet()) {
 			Variable var = getVariables().get(vname);
@@ -319,7 +322,7 @@ public class ReGenConfig extends ConfigBase {
 
 	public boolean verifyTemplateGroups() {
 		Log.info(this, "Checking template group specifications");
-		List<String> tmplNames = new ArrayList<>();
+		Set<String> tmplNames = new HashSet<>();
 		boolean ok = true;
 		for (String tname : getTemplates().keySet()) {
 			Template tmpl = getTemplates().get(tname);
@@ -421,7 +424,7 @@ public class ReGenConfig extends ConfigBase {
 		return ok;
 	}
 
-	private boolean checkDupl(List<String> unames, String uname, LogLevel lvl, String xname, String msg) {
+	private boolean checkDupl(Set<String> unames, String uname, LogLevel lvl, String xname, String msg) {
 		boolean ok = checkNull(uname, lvl, xname, "contains a null key");
 		if (ok) ok &= checkContains(unames, uname, lvl, xname, msg);
 		return unames.add(uname);
@@ -433,21 +436,20 @@ public class ReGenConfig extends ConfigBase {
 		return true;
 	}
 
-	private boolean checkContains(List<String> unames, String uname, LogLevel lvl, String xname, String msg) {
+	private boolean checkContains(Set<String> unames, String uname, LogLevel lvl, String xname, String msg) {
 		if (unames.contains(uname)) return log(lvl, xname, msg, uname);
 		return true;
 	}
 
-	private void addUnique(List<String> names, List<String> more) {
+	private void addUnique(Set<String> names, List<String> more) {
 		for (String s : more) {
 			addUnique(names, s);
 		}
 	}
 
 	// checkEmpty will error if empty name is not allowed;
-	private void addUnique(List<String> names, String name) {
+	private void addUnique(Set<String> names, String name) {
 		if ("".equals(name)) return;
-		if (names.contains(name)) return;
 		names.add(name);
 	}
 
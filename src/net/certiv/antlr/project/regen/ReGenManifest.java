@@ -0,0 +1,176 @@
+package net.certiv.antlr.project.regen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import net.certiv.antlr.project.base.JsonStore;
+import net.certiv.antlr.project.regen.spec.Template;
+import net.certiv.antlr.project.regen.spec.Unit;
+import net.certiv.antlr.project.regen.spec.Variable;
+import net.certiv.antlr.project.util.Log;
+import net.certiv.antlr.project.util.Utils;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Record of the inputs of each template group at the time the group was last rebuilt, kept next to
+ * the rule set json file. For each group, the template spec, the unit specs appended to the group,
+ * the variable specs those units use, and the model files they are drawn from are each recorded by
+ * content hash, along with the hash of the group file as written.
+ * <p>
+ * A group is current while all of its inputs hash the same and its group file is unchanged; only
+ * groups that are not current need be rebuilt. Specs are hashed as by their json form, so any change
+ * to a persisted spec field is seen.
+ */
+class ReGenManifest {
+
+	static final String manifestExt = ".manifest";
+
+	private static final int formatId = 1;
+
+	int format = formatId;
+	Map<String, Group> groups = new LinkedHashMap<>();
+
+	static class Group {
+
+		String template;						// hash of the template spec and template path
+		Map<String, String> units;				// unit name -> hash of the unit spec, in rule set order
+		Map<String, String> variables;			// variable name -> hash of the variable spec
+		Map<String, String> models;				// model pathname -> hash of the model file content
+		String output;							// hash of the group file as last written
+
+		Group() {
+			super();
+		}
+
+		// true where the inputs, including the order of the units, are the same
+		boolean sameInputs(Group other) {
+			return Objects.equals(template, other.template)
+					&& Objects.equals(units, other.units)
+					&& new ArrayList<>(units.keySet()).equals(new ArrayList<>(other.units.keySet()))
+					&& Objects.equals(variables, other.variables)
+					&& Objects.equals(models, other.models);
+		}
+	}
+
+	/** Returns the manifest file of the given rule set json file */
+	static File manifestFile(String rulesPathname) {
+		return new File(rulesPathname + manifestExt);
+	}
+
+	/**
+	 * Reads the manifest of a rule set. A missing, unreadable, or other format manifest is read as
+	 * empty, so that every group is rebuilt.
+	 */
+	static ReGenManifest load(File file) {
+		if (file.isFile()) {
+			try {
+				ReGenManifest manifest = JsonStore.read(file, ReGenManifest.class);
+				if (manifest.format == formatId && manifest.groups != null) return manifest;
+				Log.debug(ReGenManifest.class, "Ignoring manifest of another format: " + file.getPath());
+			} catch (IOException | JsonSyntaxException e) {
+				Log.warn(ReGenManifest.class, "Ignoring unreadable manifest: " + file.getPath() + " [" + e.getMessage()
+						+ "]");
+			}
+		}
+		return new ReGenManifest();
+	}
+
+	/**
+	 * Writes the manifest.
+	 *
+	 * @throws IOException
+	 */
+	void save(File file) throws IOException {
+		JsonStore.write(file, this, true);
+	}
+
+	/**
+	 * Returns the current inputs of each template group named by the given units. Units that are not
+	 * converted, or that name a blank or unknown group, are not included. A group with a model file
+	 * that cannot be read is mapped to null.
+	 */
+	static Map<String, Group> scan(ReGenConfig config, Map<String, Unit> units) {
+		Map<String, Group> inputs = new LinkedHashMap<>();
+		for (Map.Entry<String, Unit> entry : units.entrySet()) {
+			Unit unit = entry.getValue();
+			if (!converted(unit)) continue;
+			String name = unit.templateGroup;
+			Template tmpl = name != null ? config.getTemplate(name) : null;
+			if (tmpl == null) continue;
+
+			if (!inputs.containsKey(name)) {
+				Group group = new Group();
+				group.template = Utils.hash(config.getTemplatePath() + "\n" + toJson(tmpl));
+				group.units = new LinkedHashMap<>();
+				group.variables = new LinkedHashMap<>();
+				group.models = new LinkedHashMap<>();
+				inputs.put(name, group);
+			}
+			Group group = inputs.get(name);
+			if (group == null) continue;
+
+			group.units.put(entry.getKey(), Utils.hash(toJson(unit)));
+			if (unit.templateVars != null) {
+				for (String var : unit.templateVars) {
+					Variable vSpec = config.getVariable(var);
+					group.variables.put(var, Utils.hash(vSpec != null ? toJson(vSpec) : ""));
+				}
+			}
+			String pathname = config.getUnitPathname(unit);
+			try {
+				group.models.put(pathname, Utils.hash(new File(pathname)));
+			} catch (IOException e) {
+				Log.debug(ReGenManifest.class, "Unable to hash model file: " + pathname);
+				inputs.put(name, null);
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * Returns true if the named group was last rebuilt from the given inputs, and its group file is
+	 * unchanged since.
+	 */
+	boolean isCurrent(String name, Group inputs, File groupFile) {
+		Group last = groups.get(name);
+		if (last == null || inputs == null || last.output == null) return false;
+		if (!inputs.sameInputs(last) || !groupFile.isFile()) return false;
+		try {
+			return last.output.equals(Utils.hash(groupFile));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/** Records the inputs of a group just rebuilt, and the hash of its group file as written */
+	void rebuilt(String name, Group inputs, File groupFile) throws IOException {
+		inputs.output = Utils.hash(groupFile);
+		groups.put(name, inputs);
+	}
+
+	/** Drops the groups no longer named by any unit */
+	void retain(Map<String, Group> inputs) {
+		groups.keySet().retainAll(inputs.keySet());
+	}
+
+	// converted units are those appended to a template group
+	static boolean converted(Unit unit) {
+		switch (unit.unitType) {
+			case ignore:
+			case binary:
+			case document:
+				return false;
+			default:
+				return true;
+		}
+	}
+
+	private static String toJson(Object spec) {
+		return JsonStore.gson().toJson(spec);
+	}
+}
@@ -23,12 +23,14 @@ public class ReGenOpts {
 
 	public ReGenOpts() {
 		options = new Options();
+		options.addOption("a", "all", false, "rebuild all template groups, whether or not their inputs changed");
 		options.addOption("c", "create", false, "create sample rules config file");
 		options.addOption("d", "debug", false, "debug logging level");
 		options.addOption("f", "force", false, "force overwrite operation (use with caution)");
 		options.addOption("h", "help", false, "help: print usage information");
 		options.addOption("q", "quiet", false, "only log warnings and errors");
 		options.addOption("r", "rebuild", false, "rebuild the templates");
+		options.addOption("s", "snapshot", false, "load the rule set through a binary snapshot kept next to it");
 		options.addOption("u", "update", false, "update the configuration from the existing model");
 		options.addOption("v", "verify", false, "verify: check the config for internal consistency");
 	}
@@ -92,6 +94,10 @@ public class ReGenOpts {
 		return cmd.getOptions().length;
 	}
 
+	public boolean flagAll() {
+		return cmd.hasOption("a");
+	}
+
 	public boolean flagCreate() {
 		return cmd.hasOption("c");
 	}
@@ -112,6 +118,10 @@ public class ReGenOpts {
 		return cmd.hasOption("q");
 	}
 
+	public boolean flagSnapshot() {
+		return cmd.hasOption("s");
+	}
+
 	/**
 	 * Rebuild is the default if no other constructive options (Create, Update, Verify) are
 	 * specified.
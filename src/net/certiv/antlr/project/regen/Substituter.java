@@ -0,0 +1,296 @@
+package net.certiv.antlr.project.regen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import net.certiv.antlr.project.regen.spec.Variable;
+import net.certiv.antlr.project.util.AhoCorasick;
+
+/**
+ * Compiled conversion of model content to template content, for one list of template variables
+ * under one pair of template delimiters. Immutable once compiled, and so shared by all units of the
+ * same variables and delimiters.
+ * <p>
+ * The conversion gives the same result as applying each variable in turn to the whole content, as
+ * by <code>String.replace</code> or <code>String.replaceAll</code>. Consecutive match variables are
+ * applied together, in a single pass, where no replacement of an earlier variable can take part in
+ * a match of a later one; otherwise, and for regex variables, variables are applied one at a time,
+ * with regex patterns compiled once.
+ */
+class Substituter {
+
+	private final List<Step> steps = new ArrayList<>();
+
+	private interface Step {
+
+		String apply(String content);
+	}
+
+	/**
+	 * @param vars
+	 *            the unit variables, in unit order
+	 * @param lDelim
+	 *            left template delimiter
+	 * @param rDelim
+	 *            right template delimiter
+	 * @throws java.util.regex.PatternSyntaxException
+	 *             if a regex variable is not a valid pattern
+	 */
+	Substituter(List<Variable> vars, String lDelim, String rDelim) {
+		super();
+		List<String> searches = new ArrayList<>();
+		List<String> replacements = new ArrayList<>();
+		for (Variable vSpec : vars) {
+			String varText = lDelim + vSpec.variable + rDelim;
+			String replacement = varText;
+			if (vSpec.replace != null) {
+				replacement = vSpec.replace.replace(vSpec.marker, varText);
+			}
+			String search = vSpec.search.replace("\\", "\\\\");
+
+			switch (vSpec.vType) {
+				case MatchVar:
+				case MatchVarList:
+					if (search.isEmpty() || replacement.isEmpty()) {
+						flush(searches, replacements);
+						steps.add(new Replace(search, replacement));
+						break;
+					}
+					if (interacts(replacements, search)) flush(searches, replacements);
+					searches.add(search);
+					replacements.add(replacement);
+					break;
+
+				case RegexVar:
+				case RegexVarList:
+					flush(searches, replacements);
+					steps.add(new ReplaceAll(Pattern.compile(search), replacement));
+					break;
+			}
+
+			// %nameList:
+			// {name|import %packageName%.parser.gen.%modelGrammar%Parser.%name%Context; }%
+			switch (vSpec.vType) {
+				case MatchVarList:
+				case RegexVarList:
+					flush(searches, replacements);
+					String listPrefix = lDelim + vSpec.variable + "List:{ " + vSpec.variable + " | ";
+					String listSuffix = " }" + rDelim;
+					steps.add(new Wrap(listPrefix, listSuffix));
+					break;
+				default:
+			}
+		}
+		flush(searches, replacements);
+	}
+
+	/** Applies the variables to the given, already escaped, content */
+	String apply(String content) {
+		for (Step step : steps) {
+			content = step.apply(content);
+		}
+		return content;
+	}
+
+	/**
+	 * Escapes model content for inclusion in a template: existing escapes, close braces, the
+	 * template delimiters, and double right angles. Gives the same result as applying each escape in
+	 * turn to the whole content.
+	 */
+	static String escape(String content, String lDelim, String rDelim) {
+		if (lDelim.length() != 1 || rDelim.length() != 1) return escapeEach(content, lDelim, rDelim);
+		char lc = lDelim.charAt(0);
+		char rc = rDelim.charAt(0);
+		if (lc == '\\' || lc == '}' || rc == '\\' || rc == '}') return escapeEach(content, lDelim, rDelim);
+
+		// where a delimiter, every right angle is escaped singly; no double remains to be escaped
+		boolean angles = lc != '>' && rc != '>';
+
+		char[] in = content.toCharArray();
+		char[] out = null;
+		int len = in.length;
+		int dot = 0;	// next output position
+		int run = 0;	// start of the pending run of unescaped input
+		for (int idx = 0; idx < len; idx++) {
+			char ch = in[idx];
+			boolean pair = angles && ch == '>' && idx + 1 < len && in[idx + 1] == '>';
+			if (!pair && ch != '\\' && ch != '}' && ch != lc && ch != rc) continue;
+			if (out == null) out = new char[2 * len];
+			System.arraycopy(in, run, out, dot, idx - run);
+			dot += idx - run;
+			out[dot++] = '\\';
+			out[dot++] = ch;
+			if (pair) out[dot++] = in[++idx];
+			run = idx + 1;
+		}
+		if (out == null) return content;
+		System.arraycopy(in, run, out, dot, len - run);
+		return new String(out, 0, dot + len - run);
+	}
+
+	private static String escapeEach(String content, String lDelim, String rDelim) {
+		// add a level of excapes to existing escapes; will be reversed by ST
+		content = content.replace("\\", "\\\\");
+		// escape close braces to prevent interference with anon templates
+		content = content.replace("}", "\\}");
+		// escape native delimiter characters
+		content = content.replace(lDelim, "\\" + lDelim);
+		if (!lDelim.equals(rDelim)) {
+			content = content.replace(rDelim, "\\" + rDelim);
+		}
+		// escape double right angles to avoid confusion with template terminal
+		return content.replace(">>", "\\>>");
+	}
+
+	// closes the current group of match variables into a single pass step
+	private void flush(List<String> searches, List<String> replacements) {
+		if (searches.isEmpty()) return;
+		if (searches.size() == 1) {
+			steps.add(new Replace(searches.get(0), replacements.get(0)));
+		} else {
+			steps.add(new MultiReplace(searches, replacements));
+		}
+		searches.clear();
+		replacements.clear();
+	}
+
+	/*
+	 * True where a match of the later search could overlap the replacement text of an earlier
+	 * variable: by containing it, by lying within it, or by sharing a prefix or suffix with it.
+	 */
+	private static boolean interacts(List<String> replacements, String search) {
+		for (String replacement : replacements) {
+			if (interacts(replacement, search)) return true;
+		}
+		return false;
+	}
+
+	private static boolean interacts(String replacement, String search) {
+		if (search.contains(replacement) || replacement.contains(search)) return true;
+		int max = Math.min(replacement.length(), search.length()) - 1;
+		for (int len = 1; len <= max; len++) {
+			if (search.endsWith(replacement.substring(0, len))) return true;
+			if (search.startsWith(replacement.substring(replacement.length() - len))) return true;
+		}
+		return false;
+	}
+
+	// ==========================================================================================================
+
+	private static class Replace implements Step {
+
+		private final String search;
+		private final String replacement;
+
+		Replace(String search, String replacement) {
+			this.search = search;
+			this.replacement = replacement;
+		}
+
+		@Override
+		public String apply(String content) {
+			return content.replace(search, replacement);
+		}
+	}
+
+	private static class ReplaceAll implements Step {
+
+		private final Pattern pattern;
+		private final String replacement;
+
+		ReplaceAll(Pattern pattern, String replacement) {
+			this.pattern = pattern;
+			this.replacement = replacement;
+		}
+
+		@Override
+		public String apply(String content) {
+			return pattern.matcher(content).replaceAll(replacement);
+		}
+	}
+
+	private static class Wrap implements Step {
+
+		private final String prefix;
+		private final String suffix;
+
+		Wrap(String prefix, String suffix) {
+			this.prefix = prefix;
+			this.suffix = suffix;
+		}
+
+		@Override
+		public String apply(String content) {
+			return prefix + content + suffix;
+		}
+	}
+
+	/*
+	 * Applies a group of searches in one pass. Matches are claimed search by search, in variable
+	 * order: each search takes its leftmost, non-overlapping occurrences that do not overlap any
+	 * occurrence already claimed by an earlier search, just as a replace of the earlier search would
+	 * have removed them.
+	 */
+	private static class MultiReplace implements Step {
+
+		private final AhoCorasick matcher;
+		private final String[] replacements;
+
+		MultiReplace(List<String> searches, List<String> replacements) {
+			this.matcher = new AhoCorasick(searches);
+			this.replacements = replacements.toArray(new String[replacements.size()]);
+		}
+
+		@Override
+		public String apply(String content) {
+			List<int[]> found = matcher.find(content);
+			if (found.isEmpty()) return content;
+
+			// occurrences are found in end order, and so in start order for each search
+			int[][] starts = new int[matcher.size()][];
+			int[] counts = new int[matcher.size()];
+			for (int[] match : found) {
+				counts[match[1]]++;
+			}
+			for (int pattern = 0; pattern < starts.length; pattern++) {
+				starts[pattern] = new int[counts[pattern]];
+				counts[pattern] = 0;
+			}
+			for (int[] match : found) {
+				starts[match[1]][counts[match[1]]++] = match[0];
+			}
+
+			BitSet covered = new BitSet(content.length());
+			long[] claimed = new long[found.size()]; // start in the high word, search in the low
+			int num = 0;
+			for (int pattern = 0; pattern < starts.length; pattern++) {
+				int len = matcher.length(pattern);
+				int cursor = 0;
+				for (int start : starts[pattern]) {
+					if (start < cursor) continue;
+					int set = covered.nextSetBit(start);
+					if (set >= 0 && set < start + len) continue;
+					covered.set(start, start + len);
+					claimed[num++] = (long) start << 32 | pattern;
+					cursor = start + len;
+				}
+			}
+			Arrays.sort(claimed, 0, num);
+
+			StringBuilder sb = new StringBuilder(content.length() + content.length() / 8);
+			int pos = 0;
+			for (int idx = 0; idx < num; idx++) {
+				int start = (int) (claimed[idx] >>> 32);
+				int pattern = (int) claimed[idx];
+				sb.append(content, pos, start);
+				sb.append(replacements[pattern]);
+				pos = start + matcher.length(pattern);
+			}
+			sb.append(content, pos, content.length());
+			return sb.toString();
+		}
+	}
+}
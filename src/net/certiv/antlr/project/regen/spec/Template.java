@@ -1,6 +1,7 @@
 package net.certiv.antlr.project.regen.spec;
 
 import java.io.File;
+import java.io.Writer;
 import java.util.List;
 
 /**
@@ -18,6 +19,7 @@ public class Template {
 	public transient String pathname;		// constructed template full pathname
 	public transient String tmpPathname;	// initial gen dir
 	public transient File tmplFile;			// constructed file handle
+	public transient Writer tmplWriter;		// open writer of the group file during a rebuild
 	public transient String lDelim;			// left delimiter
 	public transient String rDelim;			// right delimiter
 }
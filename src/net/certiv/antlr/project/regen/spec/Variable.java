@@ -23,7 +23,4 @@ public class Variable {
 	public String search;		// search string
 	public String replace;		// replacement string
 	public String marker;		// marker
-
-	public transient String varText;		// computed replacement variable
-	public transient String replacement;	// computed replacement text
 }
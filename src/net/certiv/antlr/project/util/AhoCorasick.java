@@ -0,0 +1,165 @@
+package net.certiv.antlr.project.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a fixed set of non-empty strings. Finds every occurrence of every
+ * string, including overlapping occurrences, in a single pass over the text. Immutable once built,
+ * and so safe to share between threads.
+ */
+public class AhoCorasick {
+
+	private static final int asciiSize = 128;
+
+	private final int[] lengths;	// pattern lengths, by pattern index
+
+	// automaton states; state 0 is the root
+	private final char[][] keys;	// sorted transition characters of each state
+	private final int[][] next;		// transition targets, parallel to keys
+	private final int[] fail;		// failure link of each state
+	private final int[][] out;		// indices of the patterns ending at each state
+	private final int[][] ascii;	// complete transitions of each state on ascii characters
+
+	/**
+	 * @param patterns
+	 *            the strings to find; each must be non-empty
+	 * @throws IllegalArgumentException
+	 *             if any string is empty
+	 */
+	public AhoCorasick(List<String> patterns) {
+		super();
+		lengths = new int[patterns.size()];
+
+		List<TreeMap<Character, Integer>> goTo = new ArrayList<>();
+		List<List<Integer>> ends = new ArrayList<>();
+		goTo.add(new TreeMap<Character, Integer>());
+		ends.add(new ArrayList<Integer>());
+		for (int idx = 0; idx < patterns.size(); idx++) {
+			String pattern = patterns.get(idx);
+			if (pattern.isEmpty()) throw new IllegalArgumentException("Empty pattern at index " + idx);
+			lengths[idx] = pattern.length();
+			int state = 0;
+			for (int pos = 0; pos < pattern.length(); pos++) {
+				Integer target = goTo.get(state).get(pattern.charAt(pos));
+				if (target == null) {
+					target = goTo.size();
+					goTo.add(new TreeMap<Character, Integer>());
+					ends.add(new ArrayList<Integer>());
+					goTo.get(state).put(pattern.charAt(pos), target);
+				}
+				state = target;
+			}
+			ends.get(state).add(idx);
+		}
+
+		int size = goTo.size();
+		keys = new char[size][];
+		next = new int[size][];
+		fail = new int[size];
+		out = new int[size][];
+		for (int state = 0; state < size; state++) {
+			TreeMap<Character, Integer> edges = goTo.get(state);
+			keys[state] = new char[edges.size()];
+			next[state] = new int[edges.size()];
+			int edge = 0;
+			for (Character ch : edges.keySet()) {
+				keys[state][edge] = ch;
+				next[state][edge] = edges.get(ch);
+				edge++;
+			}
+		}
+
+		// breadth first, so the failure state of each state is complete before the state itself
+		ascii = new int[size][];
+		ascii[0] = new int[asciiSize];
+		for (int edge = 0; edge < keys[0].length; edge++) {
+			if (keys[0][edge] < asciiSize) ascii[0][keys[0][edge]] = next[0][edge];
+		}
+		Queue<Integer> queue = new ArrayDeque<>();
+		out[0] = toArray(ends.get(0));
+		for (int target : next[0]) {
+			fail[target] = 0;
+			queue.add(target);
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.remove();
+			ascii[state] = Arrays.copyOf(ascii[fail[state]], asciiSize);
+			for (int edge = 0; edge < keys[state].length; edge++) {
+				if (keys[state][edge] < asciiSize) ascii[state][keys[state][edge]] = next[state][edge];
+			}
+
+			List<Integer> found = ends.get(state);
+			int[] inherited = out[fail[state]];
+			int[] all = Arrays.copyOf(toArray(found), found.size() + inherited.length);
+			System.arraycopy(inherited, 0, all, found.size(), inherited.length);
+			out[state] = all;
+
+			for (int edge = 0; edge < keys[state].length; edge++) {
+				int target = next[state][edge];
+				int link = fail[state];
+				while (link != 0 && step(link, keys[state][edge]) < 0) {
+					link = fail[link];
+				}
+				int to = step(link, keys[state][edge]);
+				fail[target] = to < 0 ? 0 : to;
+				queue.add(target);
+			}
+		}
+	}
+
+	/** Returns the number of patterns */
+	public int size() {
+		return lengths.length;
+	}
+
+	/** Returns the length of the pattern of the given index */
+	public int length(int pattern) {
+		return lengths[pattern];
+	}
+
+	/**
+	 * Returns every occurrence of every pattern in the given text, as pairs of the start offset and
+	 * the pattern index, ordered by end offset.
+	 */
+	public List<int[]> find(CharSequence text) {
+		List<int[]> found = new ArrayList<>();
+		int state = 0;
+		for (int pos = 0, len = text.length(); pos < len; pos++) {
+			char ch = text.charAt(pos);
+			if (ch < asciiSize) {
+				state = ascii[state][ch];
+			} else {
+				int to = step(state, ch);
+				while (to < 0 && state != 0) {
+					state = fail[state];
+					to = step(state, ch);
+				}
+				state = to < 0 ? 0 : to;
+			}
+			if (out[state].length == 0) continue;
+			for (int pattern : out[state]) {
+				found.add(new int[] { pos + 1 - lengths[pattern], pattern });
+			}
+		}
+		return found;
+	}
+
+	// returns the target of the transition on the given character; -1 if none
+	private int step(int state, char ch) {
+		int edge = Arrays.binarySearch(keys[state], ch);
+		return edge < 0 ? -1 : next[state][edge];
+	}
+
+	private static int[] toArray(List<Integer> values) {
+		int[] array = new int[values.size()];
+		for (int idx = 0; idx < array.length; idx++) {
+			array[idx] = values.get(idx);
+		}
+		return array;
+	}
+}
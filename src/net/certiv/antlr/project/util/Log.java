@@ -31,7 +31,6 @@ public class Log extends ExtendedLoggerWrapper {
 
 	private static final long serialVersionUID = 1L;
 
-	private static Logger logger;
 	private static final String FQCN = Log.class.getName();
 
 	private static HashMap<Integer, LogLevel> logLevels = new HashMap<>();
@@ -167,7 +166,7 @@ public class Log extends ExtendedLoggerWrapper {
 	private static void log(Object source, LogLevel srcLevel, String message, Throwable e) {
 		if (loggable(source, srcLevel)) {
 			if (source == null) source = Log.class;
-			logger = PrivateManager.getLogger(source.getClass().getName());
+			Logger logger = PrivateManager.getLogger(source.getClass().getName());
 			switch (srcLevel) {
 				case Trace:
 					logger.trace(message, e);
@@ -20,6 +20,7 @@ import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -27,6 +28,8 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
@@ -148,6 +151,49 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Returns a new SHA-1 message digest.
+	 */
+	public static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 digest not available", e);
+		}
+	}
+
+	/**
+	 * Returns the hex encoded SHA-1 hash of the given string, encoded as UTF-8.
+	 */
+	public static String hash(String content) {
+		return hash(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the hex encoded SHA-1 hash of the given bytes.
+	 */
+	public static String hash(byte[] content) {
+		return toHex(digest().digest(content));
+	}
+
+	/**
+	 * Returns the hex encoded SHA-1 hash of the content of the given file.
+	 * 
+	 * @throws IOException
+	 */
+	public static String hash(File file) throws IOException {
+		return hash(Files.readAllBytes(file.toPath()));
+	}
+
+	public static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
 	public static String findJarPathname(Class<?> ref) {
 		try {
 			File path = new File(ref.getClass().getProtectionDomain().getCodeSource().getLocation().toURI());